@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import logic.DecodeResult;
+import logic.IsoTimestamps;
+import logic.Telemetry;
+import logic.TelemetryDecoder;
+
+/**
+ * Decodificación de un mensaje de telemetría del ESP32: el camino anterior
+ * (árbol JsonObject de Gson + Instant.parse, la lectura de campos de
+ * Logic.insertFromMqttJson sin la parte de base de datos) frente a
+ * TelemetryDecoder sobre los bytes del mensaje con un Telemetry reutilizado.
+ *
+ * Con -prof gc se ve además la basura por mensaje (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryDecoderBenchmark {
+
+    // Mensaje con el formato de publishTrafficLight (MQTT.hpp)
+    private static final byte[] PAYLOAD = ("{"
+            + "\"sensor_id\":\"1\",\"sensor_type\":\"traffic_light\",\"street_id\":\"ST_2245\","
+            + "\"timestamp\":\"2025-11-27T11:22:33.123+01:00\","
+            + "\"location\":{\"latitude\":40.4823,\"longitude\":-3.3635,"
+            + "\"district\":\"Alcala\",\"neighborhood\":\"Centro\"},"
+            + "\"data\":{\"current_state\":\"green\",\"cycle_position_seconds\":12,"
+            + "\"time_remaining_seconds\":13,\"cycle_duration_seconds\":0,"
+            + "\"traffic_light_type\":\"mixed_vehicle_pedestrian\",\"circulation_direction\":\"bidirectional\","
+            + "\"pedestrian_waiting\":false,\"pedestrian_button_pressed\":false,\"malfunction_detected\":false,"
+            + "\"cycle_count\":42,\"state_changed\":false,\"last_state_change\":\"2025-11-27T11:22:21.000+01:00\"}"
+            + "}").getBytes(StandardCharsets.UTF_8);
+
+    private final Telemetry telemetry = new Telemetry();
+
+    @Benchmark
+    public logic.Measurement gsonTree() {
+        return decodeWithGsonTree(new String(PAYLOAD, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public Telemetry streaming() {
+        if (TelemetryDecoder.decode(PAYLOAD, telemetry) != DecodeResult.OK) throw new IllegalStateException();
+        return telemetry;
+    }
+
+    @Benchmark
+    public logic.Measurement streamingToMeasurement() {
+        if (TelemetryDecoder.decode(PAYLOAD, telemetry) != DecodeResult.OK) throw new IllegalStateException();
+        return telemetry.toMeasurement();
+    }
+
+    @Benchmark
+    public long isoTimestamp() {
+        return IsoTimestamps.parseEpochMillis("2025-11-27T11:22:33.123+01:00");
+    }
+
+    @Benchmark
+    public long instantParse() {
+        return Instant.parse("2025-11-27T11:22:33.123+01:00").toEpochMilli();
+    }
+
+    /**
+     * Camino anterior a TelemetryDecoder: los mismos accesos al árbol que
+     * Logic.insertFromMqttJson, volcados a un Measurement en lugar de a la
+     * sentencia INSERT.
+     */
+    static logic.Measurement decodeWithGsonTree(String payload) {
+        JsonObject root = JsonParser.parseString(payload).getAsJsonObject();
+
+        String sensorIdStr = root.get("sensor_id").getAsString();
+        String timestampStr = root.get("timestamp").getAsString();
+        Instant instant = Instant.parse(timestampStr);
+
+        JsonObject data = root.getAsJsonObject("data");
+
+        logic.Measurement m = new logic.Measurement();
+        m.setTimestamp(Timestamp.from(instant));
+        m.setCurrentState(data.get("current_state").getAsString());
+        m.setCyclePositionSeconds(data.get("cycle_position_seconds").getAsInt());
+        m.setTimeRemainingSeconds(data.get("time_remaining_seconds").getAsInt());
+        m.setCycleDurationSeconds(data.get("cycle_duration_seconds").getAsInt());
+        m.setTrafficLightType(data.get("traffic_light_type").getAsString());
+        m.setCirculationDirection(data.get("circulation_direction").getAsString());
+        m.setPedestrianWaiting(data.get("pedestrian_waiting").getAsBoolean());
+        m.setPedestrianButtonPressed(data.get("pedestrian_button_pressed").getAsBoolean());
+        m.setMalfunctionDetected(data.get("malfunction_detected").getAsBoolean());
+        m.setCycleCount(data.get("cycle_count").getAsInt());
+        m.setStateChanged(data.get("state_changed").getAsBoolean());
+        m.setLastStateChange(data.get("last_state_change").getAsString());
+
+        m.setDispositivoSensorId(Integer.parseInt(sensorIdStr));
+        return m;
+    }
+}
@@ -26,8 +26,19 @@ CREATE TABLE dispositivo (
 INSERT INTO dispositivo (sensor_id, sensor_type, calle_street_id)
 VALUES (1, 'traffic_light', 'ST_2245');
 
+-- Serie temporal de telemetría. La clave es (dispositivo, instante con
+-- milisegundos) para que dos semáforos que publican en el mismo segundo no
+-- colisionen, y las consultas por dispositivo + rango de fechas sean un
+-- recorrido de rango sobre la clave primaria.
+--
+-- La tabla está particionada por rango de fecha (RANGE COLUMNS) para que los
+-- filtros por fecha podan particiones y la retención sea un DROP PARTITION.
+-- Solo se crea `pmax`; el servidor (Database.PartitionManager) va partiendo
+-- `pmax` en particiones diarias/semanales por adelantado y borra o archiva
+-- las caducadas. Las tablas particionadas de InnoDB no admiten claves
+-- foráneas: la existencia del dispositivo la garantiza DeviceDAO al ingerir.
 CREATE TABLE informacion (
-    `timestamp`              DATETIME NOT NULL,
+    `timestamp`              DATETIME(3) NOT NULL,
     current_state            VARCHAR(30),
     cycle_position_seconds   INT,
     time_remaining_seconds   INT,
@@ -41,8 +52,55 @@ CREATE TABLE informacion (
     state_changed            CHAR(1),
     last_state_change        CHAR(1),
     dispositivo_sensor_id    INT NOT NULL,
-    PRIMARY KEY (`timestamp`),
-    CONSTRAINT informacion_dispositivo_fk
-      FOREIGN KEY (dispositivo_sensor_id)
-      REFERENCES dispositivo (sensor_id)
+    PRIMARY KEY (dispositivo_sensor_id, `timestamp`),
+    -- Consultas sin dispositivo (todas las calles o todos los dispositivos) por rango y orden de fecha
+    KEY informacion_timestamp_idx (`timestamp`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4
+PARTITION BY RANGE COLUMNS (`timestamp`) (
+    PARTITION pmax VALUES LESS THAN (MAXVALUE)
+);
+
+-- Cuarentena de mensajes de telemetría que no se han podido decodificar
+-- (los crea también el servidor al arrancar si no existe)
+CREATE TABLE informacion_dead_letter (
+    id           BIGINT NOT NULL AUTO_INCREMENT,
+    received_at  DATETIME(3) NOT NULL,
+    topic        VARCHAR(255),
+    reason       VARCHAR(30) NOT NULL,
+    detail       VARCHAR(255),
+    payload      BLOB,
+    replayed_at  DATETIME(3) NULL,
+    PRIMARY KEY (id),
+    KEY informacion_dead_letter_reason_idx (reason, id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Agregados por minuto/hora y dispositivo/calle que mantiene la ingesta
+-- (los crea también el servidor al arrancar; histórico con Database.RollupBackfill)
+CREATE TABLE informacion_rollup (
+    granularity          CHAR(1) NOT NULL,
+    scope                CHAR(1) NOT NULL,
+    scope_id             VARCHAR(50) NOT NULL,
+    bucket               DATETIME NOT NULL,
+    samples              INT NOT NULL DEFAULT 0,
+    button_presses       INT NOT NULL DEFAULT 0,
+    malfunction_samples  INT NOT NULL DEFAULT 0,
+    state_changes        INT NOT NULL DEFAULT 0,
+    ms_green             BIGINT NOT NULL DEFAULT 0,
+    ms_yellow            BIGINT NOT NULL DEFAULT 0,
+    ms_red               BIGINT NOT NULL DEFAULT 0,
+    ms_other             BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (granularity, scope, scope_id, bucket)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+-- Tramos de estado por dispositivo que mantiene la ingesta
+-- (los crea también el servidor al arrancar; histórico con Database.TransitionRebuild)
+CREATE TABLE informacion_transicion (
+    dispositivo_sensor_id  INT NOT NULL,
+    start_ts               DATETIME(3) NOT NULL,
+    end_ts                 DATETIME(3) NOT NULL,
+    state                  VARCHAR(30),
+    duration_ms            BIGINT NOT NULL,
+    cycle_count            INT,
+    PRIMARY KEY (dispositivo_sensor_id, start_ts),
+    KEY informacion_transicion_start_idx (start_ts)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -3,50 +3,242 @@ package Database;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.util.Calendar;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.naming.Context;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
+import logic.LatencyHistogram;
 import logic.Log;
+import logic.RequestDeadline;
 
 
+/**
+ * Acceso a las conexiones de los pools JDBC de Tomcat.
+ *
+ *  - java:comp/env/jdbc/ubicomp       escritura (ingesta, DDL, mantenimiento)
+ *  - java:comp/env/jdbc/ubicomp-read  lectura (consultas de Logic y servlets)
+ *
+ * Cada pool tiene sus propios límites en docker/tomcat/context.xml, así una
+ * ráfaga de consultas del dashboard no deja a la ingesta sin conexiones. El
+ * pool de lectura puede apuntar a una réplica o ser un pool de solo lectura
+ * sobre el primario; si no está configurado, o la réplica va retrasada (ver
+ * ReplicaMonitor), obtainReadConnection devuelve una conexión del primario,
+ * pero como mucho ubicomp.db.read.primaryMax (4) a la vez. Si el pool de
+ * lectura está agotado la lectura falla: no se desborda al de escritura.
+ *
+ * Los DataSource se resuelven por JNDI una sola vez y se reutilizan. Cada
+ * préstamo mide la espera al pool y el tiempo que la conexión se retiene
+ * hasta closeConnection (ver stats()). Las sentencias con SQL fijo se
+ * reutilizan por conexión física gracias a poolPreparedStatements del pool:
+ * basta con pedirlas con el mismo texto y cerrarlas siempre (try-with-resources).
+ */
 public class ConectionDDBB
 {
+	private static final Pool WRITE = new Pool("java:comp/env/jdbc/ubicomp");
+	private static final Pool READ = new Pool("java:comp/env/jdbc/ubicomp-read");
+
+	// Pool y momento del préstamo de cada conexión abierta, para el tiempo de retención
+	private static final Map<Connection, Loan> BORROWED = Collections.synchronizedMap(new IdentityHashMap<>());
+
+	private static final AtomicLong READ_FALLBACKS = new AtomicLong();
+	private static final AtomicLong READ_REJECTED = new AtomicLong();
+
+	// Lecturas servidas a la vez por el primario (sin pool de lectura o con la réplica retrasada)
+	private static final int PRIMARY_READS_MAX = Integer.getInteger("ubicomp.db.read.primaryMax", 4);
+	private static final Semaphore PRIMARY_READS = new Semaphore(PRIMARY_READS_MAX);
+	private static final long PRIMARY_READS_WAIT_MS = 5000;
+
+	/** Un DataSource con sus métricas. */
+	private static final class Pool
+	{
+		final String name;
+		volatile DataSource dataSource;
+		volatile boolean missing = false;
+		final LatencyHistogram wait = new LatencyHistogram();
+		final LatencyHistogram hold = new LatencyHistogram();
+		final AtomicLong waitNanos = new AtomicLong();
+		final AtomicLong failures = new AtomicLong();
+
+		Pool(String name)
+		{
+			this.name = name;
+		}
+
+		DataSource dataSource() throws NamingException
+		{
+			DataSource ds = dataSource;
+			if (ds == null)
+			{
+				synchronized (this)
+				{
+					ds = dataSource;
+					if (ds == null)
+					{
+						// Get the connection factory configured in Tomcat
+						ds = (DataSource) new InitialContext().lookup(name);
+						dataSource = ds;
+						Log.log.info("DataSource " + name + " resolved");
+					}
+				}
+			}
+			return ds;
+		}
+
+		Connection borrow(boolean autoCommit) throws NamingException, SQLException
+		{
+			DataSource ds = dataSource();
+			long t0 = System.nanoTime();
+			Connection con = ds.getConnection();
+			long waited = System.nanoTime() - t0;
+			waitNanos.addAndGet(waited);
+			wait.record(TimeUnit.NANOSECONDS.toMillis(waited));
+			BORROWED.put(con, new Loan(this, System.nanoTime()));
+			try
+			{
+				con.setAutoCommit(autoCommit);
+			} catch (SQLException ex)
+			{
+				BORROWED.remove(con);
+				con.close();
+				throw ex;
+			}
+			return con;
+		}
+
+		Map<String, Object> stats()
+		{
+			Map<String, Object> s = new LinkedHashMap<>();
+			long n = wait.getCount();
+			s.put("configured", !missing);
+			s.put("borrowed", n);
+			s.put("failures", failures.get());
+			s.put("avgWaitUs", n == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.get()) / n);
+			s.put("wait", wait.snapshot());
+			s.put("hold", hold.snapshot());
+			return s;
+		}
+	}
+
+	private static final class Loan
+	{
+		final Pool pool;
+		final long since;
+		// Lectura servida por el primario: devuelve su plaza en PRIMARY_READS al cerrar
+		boolean primaryRead = false;
+
+		Loan(Pool pool, long since)
+		{
+			this.pool = pool;
+			this.since = since;
+		}
+	}
+
 	public Connection obtainConnection(boolean autoCommit) throws NullPointerException
     {
         Connection con=null;
         int intentos = 5;
         for (int i = 0; i < intentos; i++) 
         {
-        	Log.log.info("Attempt " + i + " to connect to the database");
         	try
 	          {
-	            Context ctx = new InitialContext();
-	            // Get the connection factory configured in Tomcat
-	            DataSource ds = (DataSource) ctx.lookup("java:comp/env/jdbc/ubicomp");
-	           
 	            // Obtiene una conexion
-	            con = ds.getConnection();
-				Calendar calendar = Calendar.getInstance();
-				java.sql.Date date = new java.sql.Date(calendar.getTime().getTime());
-	            Log.log.debug("Connection creation. Bd connection identifier: " + con.toString() + " obtained in " + date.toString());
-	            con.setAutoCommit(autoCommit);
-	        	Log.log.info("Conection obtained in the attempt: " + i);
+	            con = WRITE.borrow(autoCommit);
+	            if (i > 0) Log.log.info("Conection obtained in the attempt: " + i);
 	            i = intentos;
 	          } catch (NamingException ex)
 	          {
 	            Log.log.error("Error getting connection while trying: " + i + " = " + ex); 
 	          } catch (SQLException ex)
 	          {
+	            WRITE.failures.incrementAndGet();
 	            Log.log.error("ERROR sql getting connection while trying: " + i + " = " + ex.getSQLState() + "\n" + ex.toString());
 	            throw (new NullPointerException("SQL connection is null"));
 	          }
 		}        
         return con;
     }
+
+	/**
+	 * Conexión (autocommit) para consultas de solo lectura: del pool de
+	 * lectura si está configurado y la réplica está al día; si no, del
+	 * primario con el límite de PRIMARY_READS. Un pool de lectura agotado
+	 * hace fallar la lectura en lugar de quitar conexiones a la ingesta.
+	 */
+	public Connection obtainReadConnection() throws NullPointerException
+	{
+		if (!READ.missing && ReplicaMonitor.getInstance().readsAllowed())
+		{
+			try
+			{
+				return READ.borrow(true);
+			} catch (NamingException ex)
+			{
+				READ.missing = true;
+				Log.log.warn(READ.name + " is not configured; read queries use the primary pool");
+			} catch (SQLException ex)
+			{
+				READ.failures.incrementAndGet();
+				Log.log.error("ERROR sql getting a read connection: " + ex.getSQLState() + "\n" + ex.toString());
+				throw (new NullPointerException("SQL connection is null"));
+			}
+		}
+		return obtainPrimaryReadConnection();
+	}
+
+	private Connection obtainPrimaryReadConnection() throws NullPointerException
+	{
+		try
+		{
+			if (!PRIMARY_READS.tryAcquire(PRIMARY_READS_WAIT_MS, TimeUnit.MILLISECONDS))
+			{
+				READ_REJECTED.incrementAndGet();
+				Log.log.warn("Too many read queries on the primary pool (max " + PRIMARY_READS_MAX + "), read rejected");
+				throw (new NullPointerException("SQL connection is null"));
+			}
+		} catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw (new NullPointerException("SQL connection is null"));
+		}
+		Connection con = null;
+		try
+		{
+			con = obtainConnection(true);
+		} finally
+		{
+			Loan loan = con == null ? null : BORROWED.get(con);
+			if (loan != null) loan.primaryRead = true;
+			else PRIMARY_READS.release();
+		}
+		READ_FALLBACKS.incrementAndGet();
+		return con;
+	}
+
+	/**
+	 * Conexión directa del pool de lectura, sin reserva al primario (para
+	 * medir el retraso de la réplica).
+	 *
+	 * @return null si el pool de lectura no está configurado
+	 */
+	static Connection obtainReadPoolConnection() throws SQLException
+	{
+		if (READ.missing) return null;
+		try
+		{
+			return READ.borrow(true);
+		} catch (NamingException ex)
+		{
+			READ.missing = true;
+			return null;
+		}
+	}
     
     public void closeTransaction(Connection con)
     {
@@ -76,22 +268,38 @@ public class ConectionDDBB
     {
         try
           {
-        	Log.log.info("Closing the connection");
             if (null != con)
               {
-				Calendar calendar = Calendar.getInstance();
-				java.sql.Date date = new java.sql.Date(calendar.getTime().getTime());
-	            Log.log.debug("Connection closed. Bd connection identifier: " + con.toString() + " obtained in " + date.toString());
+                Loan loan = BORROWED.remove(con);
+                if (loan != null)
+                  {
+                    loan.pool.hold.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loan.since));
+                    if (loan.primaryRead) PRIMARY_READS.release();
+                  }
                 con.close();
               }
-
-        	Log.log.info("The connection has been closed");
           } catch (SQLException e)
           {
         	  Log.log.error("ERROR sql closing the connection: " + e);
-        	  e.printStackTrace();
           }
     }
+
+    /**
+     * Espera al pool y retención de las conexiones, por pool, y lecturas
+     * servidas por el primario.
+     */
+    public static Map<String, Object> stats()
+    {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("inUse", BORROWED.size());
+        s.put("readFallbacks", READ_FALLBACKS.get());
+        s.put("primaryReadsInUse", PRIMARY_READS_MAX - PRIMARY_READS.availablePermits());
+        s.put("primaryReadsRejected", READ_REJECTED.get());
+        s.put("write", WRITE.stats());
+        s.put("read", READ.stats());
+        s.put("replica", ReplicaMonitor.getInstance().stats());
+        return s;
+    }
     
     public static PreparedStatement getStatement(Connection con,String sql)
     {
@@ -100,8 +308,15 @@ public class ConectionDDBB
           {
             if (con != null)
               {
-                ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-
+                ps = con.prepareStatement(sql);
+                // Plazo de la petición HTTP que se atiende en este hilo, si la hay
+                try {
+                    RequestDeadline.apply(ps);
+                } catch (SQLException ex) {
+                    ps.close();
+                    ps = null;
+                    throw ex;
+                }
               }
           } catch (SQLException ex)
           {
@@ -114,20 +329,42 @@ public class ConectionDDBB
 public static PreparedStatement GetDataBD(Connection con)
 {
     return getStatement(con,
-        "SELECT * FROM informacion ORDER BY timestamp DESC"
+        "SELECT * FROM informacion ORDER BY timestamp DESC, dispositivo_sensor_id DESC LIMIT ?"
     );
 }
 
-public static PreparedStatement SetDataBD(Connection con)
+/**
+ * Página siguiente a un cursor (timestamp, dispositivo) con predicado de búsqueda, sin OFFSET.
+ */
+public static PreparedStatement GetDataAfterBD(Connection con)
 {
     return getStatement(con,
+        "SELECT * FROM informacion " +
+        "WHERE (timestamp < ? OR (timestamp = ? AND dispositivo_sensor_id < ?)) " +
+        "ORDER BY timestamp DESC, dispositivo_sensor_id DESC LIMIT ?"
+    );
+}
+
+private static final String INSERT_INFORMACION_SQL =
         "INSERT INTO informacion (" +
         "timestamp, current_state, cycle_position_seconds, time_remaining_seconds, " +
         "cycle_duration_seconds, traffic_light_type, circulation_direction, " +
         "pedestrian_waiting, pedestrian_button_pressed, malfunction_detected, " +
         "cycle_count, state_changed, last_state_change, dispositivo_sensor_id" +
-        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
-    );
+        ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+public static PreparedStatement SetDataBD(Connection con)
+{
+    return getStatement(con, INSERT_INFORMACION_SQL);
+}
+
+/**
+ * Mismo INSERT que SetDataBD, para enviarlo en lote (addBatch/executeBatch)
+ * con el protocolo bulk del driver.
+ */
+public static PreparedStatement SetDataBatchBD(Connection con) throws SQLException
+{
+    return con.prepareStatement(INSERT_INFORMACION_SQL);
 }
 
 }
@@ -0,0 +1,356 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.DecodeResult;
+import logic.Log;
+import logic.RequestDeadline;
+
+/**
+ * Cuarentena (dead letter) de los mensajes de telemetría que no se pueden
+ * decodificar, en la tabla `informacion_dead_letter`.
+ *
+ * La ingesta solo encola (cola acotada; si se llena, el mensaje se cuenta y
+ * se descarta) y un hilo propio los inserta por lotes, así un dispositivo que
+ * envía basura no frena al resto. Se guardan el topic, el motivo, la ruta del
+ * campo erróneo y los bytes originales (recortados a maxPayloadBytes) para
+ * poder analizarlos y reprocesarlos desde /DeadLetters.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.deadletter.queue            capacidad de la cola (1000)
+ *  - ubicomp.deadletter.batch            filas por inserción (100)
+ *  - ubicomp.deadletter.maxPayloadBytes  bytes del payload que se guardan (4096)
+ *  - ubicomp.deadletter.maxRows          filas que se conservan en la tabla (100000)
+ */
+public class DeadLetterStore {
+
+    private static final DeadLetterStore INSTANCE = new DeadLetterStore();
+
+    private static final String CREATE_SQL =
+        "CREATE TABLE IF NOT EXISTS informacion_dead_letter (" +
+        "  id           BIGINT NOT NULL AUTO_INCREMENT," +
+        "  received_at  DATETIME(3) NOT NULL," +
+        "  topic        VARCHAR(255)," +
+        "  reason       VARCHAR(30) NOT NULL," +
+        "  detail       VARCHAR(255)," +
+        "  payload      BLOB," +
+        "  replayed_at  DATETIME(3) NULL," +
+        "  PRIMARY KEY (id)," +
+        "  KEY informacion_dead_letter_reason_idx (reason, id)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    private static final String INSERT_SQL =
+        "INSERT INTO informacion_dead_letter (received_at, topic, reason, detail, payload) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String COLUMNS = "id, received_at, topic, reason, detail, payload, replayed_at";
+
+    private final int batchSize = Integer.getInteger("ubicomp.deadletter.batch", 100);
+    private final int maxPayloadBytes = Integer.getInteger("ubicomp.deadletter.maxPayloadBytes", 4096);
+    private final long maxRows = Long.getLong("ubicomp.deadletter.maxRows", 100000L);
+    private final BlockingQueue<DeadLetter> queue =
+            new ArrayBlockingQueue<>(Integer.getInteger("ubicomp.deadletter.queue", 1000));
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    // ---- métricas ----
+    private final AtomicLong quarantined = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong pruned = new AtomicLong();
+    private final Map<DecodeResult, AtomicLong> byReason = new LinkedHashMap<>();
+
+    /**
+     * Mensaje en cuarentena (id y replayedAt solo al leerlo de la tabla).
+     */
+    public static final class DeadLetter {
+        public final long id;
+        public final Timestamp receivedAt;
+        public final String topic;
+        public final String reason;
+        public final String detail;
+        public final byte[] payload;
+        public final Timestamp replayedAt;
+
+        DeadLetter(long id, Timestamp receivedAt, String topic, String reason, String detail,
+                   byte[] payload, Timestamp replayedAt) {
+            this.id = id;
+            this.receivedAt = receivedAt;
+            this.topic = topic;
+            this.reason = reason;
+            this.detail = detail;
+            this.payload = payload;
+            this.replayedAt = replayedAt;
+        }
+    }
+
+    private DeadLetterStore() {
+        for (DecodeResult r : DecodeResult.values()) {
+            if (r != DecodeResult.OK) byReason.put(r, new AtomicLong());
+        }
+    }
+
+    public static DeadLetterStore getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        ensureTable();
+        running = true;
+        worker = new Thread(this::runLoop, "dead-letter-writer");
+        worker.setDaemon(true);
+        worker.start();
+        Log.logdb.info("DeadLetterStore started (batch=" + batchSize + ", maxRows=" + maxRows + ")");
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<DeadLetter> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        write(rest);
+    }
+
+    /**
+     * Poda periódica: conserva solo las maxRows filas más recientes.
+     */
+    public void schedule(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::prune, 10, 60, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Encola un mensaje rechazado. Nunca bloquea ni lanza excepciones.
+     */
+    public void submit(String topic, byte[] payload, DecodeResult reason, String detail) {
+        quarantined.incrementAndGet();
+        AtomicLong counter = byReason.get(reason);
+        if (counter != null) counter.incrementAndGet();
+        byte[] kept = payload.length > maxPayloadBytes ? Arrays.copyOf(payload, maxPayloadBytes) : payload;
+        DeadLetter d = new DeadLetter(0, new Timestamp(System.currentTimeMillis()), topic, reason.name(),
+                truncate(detail, 255), kept, null);
+        if (!running) {
+            write(List.of(d));
+            return;
+        }
+        if (!queue.offer(d)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private void runLoop() {
+        List<DeadLetter> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                DeadLetter first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException e) {
+                // stop(): lo pendiente se vuelca allí
+            } catch (Exception e) {
+                Log.logdb.error("Unexpected error in DeadLetterStore", e);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<DeadLetter> batch) {
+        if (batch.isEmpty()) return;
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            try (PreparedStatement ps = con.prepareStatement(INSERT_SQL)) {
+                for (DeadLetter d : batch) {
+                    ps.setTimestamp(1, d.receivedAt);
+                    ps.setString(2, truncate(d.topic, 255));
+                    ps.setString(3, d.reason);
+                    ps.setString(4, d.detail);
+                    ps.setBytes(5, d.payload);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            dropped.addAndGet(batch.size());
+            Log.logdb.error("Error writing " + batch.size() + " rows into `informacion_dead_letter`: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    // ===================== Consulta y reproceso =====================
+
+    /**
+     * Mensajes en cuarentena del más reciente al más antiguo.
+     *
+     * @param beforeId        solo ids menores (paginación), o null
+     * @param reason          filtra por motivo, o null
+     * @param includeReplayed incluir los ya reprocesados
+     */
+    public List<DeadLetter> list(int limit, Long beforeId, String reason, boolean includeReplayed) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM informacion_dead_letter WHERE 1=1");
+        if (beforeId != null) sql.append(" AND id < ?");
+        if (reason != null) sql.append(" AND reason = ?");
+        if (!includeReplayed) sql.append(" AND replayed_at IS NULL");
+        sql.append(" ORDER BY id DESC LIMIT ?");
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                RequestDeadline.apply(ps);
+                int idx = 1;
+                if (beforeId != null) ps.setLong(idx++, beforeId);
+                if (reason != null) ps.setString(idx++, reason);
+                ps.setInt(idx, limit);
+                return read(ps);
+            }
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    /**
+     * Mensajes sin reprocesar con esos ids, o los más antiguos pendientes si ids está vacío.
+     */
+    public List<DeadLetter> pending(List<Long> ids, int limit) throws SQLException {
+        StringBuilder sql = new StringBuilder("SELECT " + COLUMNS + " FROM informacion_dead_letter WHERE replayed_at IS NULL");
+        if (!ids.isEmpty()) {
+            sql.append(" AND id IN (");
+            for (int i = 0; i < ids.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+            sql.append(")");
+        }
+        sql.append(" ORDER BY id LIMIT ?");
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+                RequestDeadline.apply(ps);
+                int idx = 1;
+                for (Long id : ids) ps.setLong(idx++, id);
+                ps.setInt(idx, limit);
+                return read(ps);
+            }
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    public void markReplayed(List<Long> ids) throws SQLException {
+        if (ids.isEmpty()) return;
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            try (PreparedStatement ps = con.prepareStatement(
+                    "UPDATE informacion_dead_letter SET replayed_at = NOW(3) WHERE id = ?")) {
+                for (Long id : ids) {
+                    ps.setLong(1, id);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    private static List<DeadLetter> read(PreparedStatement ps) throws SQLException {
+        List<DeadLetter> out = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                out.add(new DeadLetter(rs.getLong("id"), rs.getTimestamp("received_at"), rs.getString("topic"),
+                        rs.getString("reason"), rs.getString("detail"), rs.getBytes("payload"),
+                        rs.getTimestamp("replayed_at")));
+            }
+        }
+        return out;
+    }
+
+    // ===================== Mantenimiento =====================
+
+    private void ensureTable() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            try (Statement st = con.createStatement()) {
+                st.execute(CREATE_SQL);
+            }
+        } catch (Exception e) {
+            Log.logdb.error("Error creating `informacion_dead_letter`: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    private void prune() {
+        if (maxRows <= 0) return;
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            long maxId;
+            try (Statement st = con.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT MAX(id) FROM informacion_dead_letter")) {
+                rs.next();
+                maxId = rs.getLong(1);
+            }
+            if (maxId <= maxRows) return;
+            try (PreparedStatement ps = con.prepareStatement("DELETE FROM informacion_dead_letter WHERE id <= ?")) {
+                ps.setLong(1, maxId - maxRows);
+                int n = ps.executeUpdate();
+                pruned.addAndGet(n);
+                if (n > 0) Log.logdb.info("Pruned " + n + " rows from `informacion_dead_letter`");
+            }
+        } catch (Exception e) {
+            Log.logdb.error("Error pruning `informacion_dead_letter`: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    private static String truncate(String s, int max) {
+        return s == null || s.length() <= max ? s : s.substring(0, max);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("quarantined", quarantined.get());
+        s.put("written", written.get());
+        s.put("dropped", dropped.get());
+        s.put("pruned", pruned.get());
+        s.put("queueDepth", queue.size());
+        Map<String, Long> reasons = new LinkedHashMap<>();
+        byReason.forEach((r, c) -> reasons.put(r.name(), c.get()));
+        s.put("byReason", reasons);
+        return s;
+    }
+}
@@ -4,52 +4,136 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import logic.Log;
 
 public class DeviceDAO {
 
-    
+
     private static final String DEFAULT_SENSOR_TYPE = "traffic_light";
-    private static final String DEFAULT_CALLE_STREET_ID = "ST_2245";
+    public static final String DEFAULT_CALLE_STREET_ID = "ST_2245";
+
+    /**
+     * Alta idempotente: si dos hilos registran el mismo sensor a la vez, el
+     * segundo no falla. La calle del mensaje se usa solo si existe en `calle`
+     * (por la FK); si no, se usa la calle por defecto.
+     *
+     * INSERT IGNORE y no ON DUPLICATE KEY UPDATE: con los valores por defecto
+     * de MariaDB Connector/J (useAffectedRows=false) un UPDATE sin cambios
+     * también cuenta 1 fila, y no se distinguiría un alta de un dispositivo
+     * que ya estaba.
+     */
+    private static final String UPSERT_SQL =
+        "INSERT IGNORE INTO dispositivo (sensor_id, sensor_type, calle_street_id) " +
+        "SELECT ?, ?, COALESCE((SELECT c.street_id FROM calle c WHERE c.street_id = ?), ?)";
+
+    private static final int ER_DUP_ENTRY = 1062;
+
+    // Registro en memoria de los sensor_id que ya existen en `dispositivo`
+    private static final IntSet KNOWN_DEVICES = new IntSet();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    /**
+     * Carga en memoria todos los sensor_id de `dispositivo`. Se llama al
+     * arrancar el servidor; si falla, el registro se irá llenando con los
+     * mensajes que lleguen.
+     */
+    public static void preloadRegistry() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            int[] ids = new int[64];
+            int n = 0;
+            try (PreparedStatement ps = con.prepareStatement("SELECT sensor_id FROM dispositivo");
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    if (n == ids.length) ids = Arrays.copyOf(ids, n * 2);
+                    ids[n++] = rs.getInt(1);
+                }
+            }
+            KNOWN_DEVICES.replaceAll(Arrays.copyOf(ids, n));
+            Log.logdb.info("Device registry preloaded with " + n + " devices");
+        } catch (Exception e) {
+            Log.logdb.error("Error preloading device registry: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
 
     /**
      * Garantiza que exista un registro en la tabla `dispositivo`.
      * Si no existe, crea automáticamente el dispositivo con valores por defecto.
      *
+     * El sensor_id no entra en el registro en memoria hasta que quien confirma
+     * la transacción llama a {@link #markKnown(int)}.
+     *
      * @param con        conexión abierta (NO se cierra aquí)
      * @param sensorId   sensor_id del mensaje MQTT
      */
-    public static void ensureDeviceExists(Connection con, int sensorId) throws SQLException {
+    public static boolean ensureDeviceExists(Connection con, int sensorId) throws SQLException {
+        return ensureDeviceExists(con, sensorId, null);
+    }
 
-        // 1) Comprobar si existe en la tabla dispositivo
-        String checkSql = "SELECT sensor_id FROM dispositivo WHERE sensor_id = ?";
-        try (PreparedStatement ps = con.prepareStatement(checkSql)) {
-            ps.setInt(1, sensorId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    // Ya existe
-                    Log.logdb.debug("Device " + sensorId + " already exists in `dispositivo`");
-                    return;
-                }
-            }
+    /**
+     * Igual que {@link #ensureDeviceExists(Connection, int)} pero usando la
+     * calle indicada en el mensaje si ya está dada de alta en `calle`.
+     *
+     * @return true si se ha dado de alta el dispositivo: quien confirme la
+     *         transacción debe invalidar entonces StreetCatalog (antes, una
+     *         recarga del catálogo no lo vería y se quedaría sin él)
+     */
+    public static boolean ensureDeviceExists(Connection con, int sensorId, String streetId) throws SQLException {
+        if (KNOWN_DEVICES.contains(sensorId)) {
+            HITS.incrementAndGet();
+            return false;
         }
+        MISSES.incrementAndGet();
 
-        Log.logdb.info("Device " + sensorId + " does not exist. Creating it in `dispositivo` ...");
-
-        // 2) Insertar un nuevo dispositivo con valores por defecto
-        String insertSql =
-            "INSERT INTO dispositivo (" +
-            "sensor_id, sensor_type, calle_street_id" +
-            ") VALUES (?, ?, ?)";
+        Log.logdb.info("Device " + sensorId + " not in registry. Registering it in `dispositivo` ...");
 
-        try (PreparedStatement ps = con.prepareStatement(insertSql)) {
+        boolean created;
+        try (PreparedStatement ps = con.prepareStatement(UPSERT_SQL)) {
             ps.setInt(1, sensorId);
             ps.setString(2, DEFAULT_SENSOR_TYPE);
-            ps.setString(3, DEFAULT_CALLE_STREET_ID);
-            ps.executeUpdate();
+            ps.setString(3, streetId);
+            ps.setString(4, DEFAULT_CALLE_STREET_ID);
+            created = ps.executeUpdate() == 1;
+            if (created) {
+                Log.logdb.info("Device " + sensorId + " created in `dispositivo`");
+            } else {
+                // IGNORE también convierte en aviso un fallo de la FK: solo vale el duplicado
+                for (SQLWarning w = ps.getWarnings(); w != null; w = w.getNextWarning()) {
+                    if (w.getErrorCode() != ER_DUP_ENTRY) {
+                        throw new SQLException("Device " + sensorId + " not registered: " + w.getMessage(),
+                                w.getSQLState(), w.getErrorCode());
+                    }
+                }
+            }
         }
+        return created;
+    }
+
+    /**
+     * Apunta en el registro en memoria un dispositivo dado de alta con
+     * {@link #ensureDeviceExists}. Solo tras confirmar la transacción: si se
+     * deshiciera, el registro daría por existente un dispositivo que no está.
+     */
+    public static void markKnown(int sensorId) {
+        if (!KNOWN_DEVICES.contains(sensorId)) KNOWN_DEVICES.add(sensorId);
+    }
 
-        Log.logdb.info("Device " + sensorId + " created successfully in `dispositivo`");
+    public static Map<String, Object> registryStats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("devices", KNOWN_DEVICES.size());
+        s.put("hits", HITS.get());
+        s.put("misses", MISSES.get());
+        return s;
     }
 }
@@ -0,0 +1,147 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+
+/**
+ * Migración en caliente de `informacion` al esquema con clave
+ * (dispositivo_sensor_id, timestamp DATETIME(3)), particionado por fecha.
+ *
+ * Crea `informacion_new` con el esquema nuevo, copia las filas existentes por
+ * tramos de la clave antigua (cada tramo en su propia transacción corta, así
+ * la ingesta sigue escribiendo), intercambia las tablas con un RENAME atómico
+ * y vuelve a pasar toda la tabla vieja (INSERT IGNORE, por tramos) para
+ * recoger las filas que entraron en ella durante la copia: pueden llevar
+ * cualquier marca de tiempo (spool, reloj del ESP32 sin NTP), así que no
+ * basta con las posteriores al último tramo copiado.
+ * La tabla original queda como `informacion_old` para borrarla a mano.
+ *
+ * Uso (con el WAR en el classpath):
+ *   java -cp "WEB-INF/classes:WEB-INF/lib/*" Database.InformacionMigration \
+ *        jdbc:mariadb://ubicomp-db:3306/pecl2 pecl2_user pecl2_pass [tamañoTramo] [pausaMs]
+ */
+public class InformacionMigration {
+
+    private static final String COLUMNS =
+        "`timestamp`, current_state, cycle_position_seconds, time_remaining_seconds, " +
+        "cycle_duration_seconds, traffic_light_type, circulation_direction, " +
+        "pedestrian_waiting, pedestrian_button_pressed, malfunction_detected, " +
+        "cycle_count, state_changed, last_state_change, dispositivo_sensor_id";
+
+    private static final String CREATE_NEW_SQL =
+        "CREATE TABLE IF NOT EXISTS informacion_new (" +
+        "  `timestamp`              DATETIME(3) NOT NULL," +
+        "  current_state            VARCHAR(30)," +
+        "  cycle_position_seconds   INT," +
+        "  time_remaining_seconds   INT," +
+        "  cycle_duration_seconds   INT," +
+        "  traffic_light_type       VARCHAR(50)," +
+        "  circulation_direction    VARCHAR(30)," +
+        "  pedestrian_waiting       CHAR(1)," +
+        "  pedestrian_button_pressed CHAR(1)," +
+        "  malfunction_detected     CHAR(1)," +
+        "  cycle_count              INT," +
+        "  state_changed            CHAR(1)," +
+        "  last_state_change        CHAR(1)," +
+        "  dispositivo_sensor_id    INT NOT NULL," +
+        "  PRIMARY KEY (dispositivo_sensor_id, `timestamp`)," +
+        "  KEY informacion_timestamp_idx (`timestamp`)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 " +
+        "PARTITION BY RANGE COLUMNS (`timestamp`) (" +
+        "  PARTITION pmax VALUES LESS THAN (MAXVALUE))";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Uso: InformacionMigration <jdbcUrl> <usuario> <clave> [tamañoTramo] [pausaMs]");
+            System.exit(1);
+        }
+        int chunkSize = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        long pauseMs = args.length > 4 ? Long.parseLong(args[4]) : 50L;
+
+        try (Connection con = DriverManager.getConnection(args[0], args[1], args[2])) {
+            migrate(con, chunkSize, pauseMs);
+        }
+    }
+
+    public static void migrate(Connection con, int chunkSize, long pauseMs) throws SQLException, InterruptedException {
+        con.setAutoCommit(true);
+        if (isMigrated(con)) {
+            System.out.println("`informacion` ya tiene la clave (dispositivo_sensor_id, timestamp). Nada que hacer.");
+            return;
+        }
+
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_NEW_SQL);
+        }
+
+        copyChunks(con, "informacion", "informacion_new", chunkSize, pauseMs);
+
+        try (Statement st = con.createStatement()) {
+            st.execute("RENAME TABLE informacion TO informacion_old, informacion_new TO informacion");
+        }
+        System.out.println("Tablas intercambiadas. Copiando filas recibidas durante la migración ...");
+
+        // Tras el RENAME ya nadie escribe en la tabla vieja: una pasada completa
+        // recoge todo lo que entró durante la copia; lo ya copiado se ignora por la clave
+        long recovered = copyChunks(con, "informacion_old", "informacion", chunkSize, pauseMs);
+        System.out.println("Filas recuperadas: " + recovered);
+        System.out.println("Migración completada. Revise y borre `informacion_old` cuando quiera.");
+    }
+
+    /**
+     * Copia {@code source} en {@code target} (INSERT IGNORE) por tramos
+     * ordenados por `timestamp`, cada uno en su propia transacción.
+     *
+     * @return filas insertadas (las que ya estaban no cuentan)
+     */
+    private static long copyChunks(Connection con, String source, String target, int chunkSize, long pauseMs)
+            throws SQLException, InterruptedException {
+        String boundSql = "SELECT MAX(`timestamp`), COUNT(*) FROM (" +
+                          "SELECT `timestamp` FROM " + source + " WHERE `timestamp` > ? " +
+                          "ORDER BY `timestamp` LIMIT ?) t";
+        String copySql = "INSERT IGNORE INTO " + target + " (" + COLUMNS + ") " +
+                         "SELECT " + COLUMNS + " FROM " + source + " " +
+                         "WHERE `timestamp` > ? AND `timestamp` <= ?";
+        // Mínimo de DATETIME: incluye también las marcas de 1970 del reloj sin NTP del ESP32
+        Timestamp last = Timestamp.valueOf("1000-01-01 00:00:00");
+        long copied = 0;
+        try (PreparedStatement bound = con.prepareStatement(boundSql);
+             PreparedStatement copy = con.prepareStatement(copySql)) {
+            while (true) {
+                bound.setTimestamp(1, last);
+                bound.setInt(2, chunkSize);
+                Timestamp upper;
+                int count;
+                try (ResultSet rs = bound.executeQuery()) {
+                    rs.next();
+                    upper = rs.getTimestamp(1);
+                    count = rs.getInt(2);
+                }
+                if (upper == null || count == 0) break;
+
+                copy.setTimestamp(1, last);
+                copy.setTimestamp(2, upper);
+                copied += copy.executeUpdate();
+                last = upper;
+                System.out.println(target + ": " + copied + " filas copiadas (hasta " + upper + ")");
+                if (pauseMs > 0) Thread.sleep(pauseMs);
+            }
+        }
+        return copied;
+    }
+
+    private static boolean isMigrated(Connection con) throws SQLException {
+        String sql = "SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE " +
+                     "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'informacion' " +
+                     "AND CONSTRAINT_NAME = 'PRIMARY' AND ORDINAL_POSITION = 1";
+        try (PreparedStatement ps = con.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            return rs.next() && "dispositivo_sensor_id".equalsIgnoreCase(rs.getString(1));
+        }
+    }
+}
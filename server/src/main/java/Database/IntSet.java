@@ -0,0 +1,52 @@
+package Database;
+
+import java.util.Arrays;
+
+/**
+ * Conjunto concurrente de int sin boxing, pensado para datos que casi no
+ * cambian (p. ej. los sensor_id de `dispositivo`).
+ *
+ * Las lecturas son una búsqueda binaria sobre un array ordenado publicado de
+ * forma volátil, sin bloqueos. Las altas copian el array bajo un cerrojo.
+ */
+public class IntSet {
+
+    private volatile int[] values = new int[0];
+
+    public boolean contains(int v) {
+        return Arrays.binarySearch(values, v) >= 0;
+    }
+
+    /**
+     * @return true si el valor no estaba en el conjunto
+     */
+    public synchronized boolean add(int v) {
+        int[] current = values;
+        int pos = Arrays.binarySearch(current, v);
+        if (pos >= 0) return false;
+        int insert = -pos - 1;
+        int[] next = new int[current.length + 1];
+        System.arraycopy(current, 0, next, 0, insert);
+        next[insert] = v;
+        System.arraycopy(current, insert, next, insert + 1, current.length - insert);
+        values = next;
+        return true;
+    }
+
+    /**
+     * Sustituye el contenido completo del conjunto.
+     */
+    public synchronized void replaceAll(int[] newValues) {
+        int[] copy = newValues.clone();
+        Arrays.sort(copy);
+        int n = 0;
+        for (int i = 0; i < copy.length; i++) {
+            if (i == 0 || copy[i] != copy[i - 1]) copy[n++] = copy[i];
+        }
+        values = Arrays.copyOf(copy, n);
+    }
+
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,381 @@
+package Database;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.Log;
+import logic.Measurement;
+import logic.QueryResultCache;
+import logic.StreetCatalog;
+
+/**
+ * Escritor por lotes (group commit) de la tabla `informacion`.
+ *
+ * Las medidas decodificadas se encolan y un único hilo las agrupa en lotes
+ * JDBC que se vuelcan en una transacción por lote, cuando se alcanza el
+ * tamaño máximo o vence el plazo de latencia desde la primera medida del lote.
+ *
+ * Configuración (propiedades de sistema, p. ej. en CATALINA_OPTS):
+ *  - ubicomp.batch.size          filas máximas por lote (500)
+ *  - ubicomp.batch.maxLatencyMs  espera máxima de una fila antes del volcado (200)
+ *  - ubicomp.batch.queue         capacidad de la cola de entrada (20000)
+ *  - ubicomp.spool.retryMs       tras un fallo de conexión, tiempo durante el
+ *                                que los lotes van directos al spool (5000)
+ *
+ * Si la base de datos no responde, o la cola está llena, las medidas se
+ * guardan en el WriteAheadSpool local en lugar de descartarse; su reproductor
+ * las inserta después con writeDirect.
+ */
+public class MeasurementBatchWriter {
+
+    private static final MeasurementBatchWriter INSTANCE = new MeasurementBatchWriter();
+
+    private static final long RATE_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long STATS_LOG_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    // Código de error de MariaDB para clave duplicada
+    private static final int ER_DUP_ENTRY = 1062;
+
+    private final int batchSize = Integer.getInteger("ubicomp.batch.size", 500);
+    private final long maxLatencyNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("ubicomp.batch.maxLatencyMs", 200L));
+    private final BlockingQueue<Measurement> queue =
+            new ArrayBlockingQueue<>(Integer.getInteger("ubicomp.batch.queue", 20000));
+    private final long spoolRetryNanos =
+            TimeUnit.MILLISECONDS.toNanos(Long.getLong("ubicomp.spool.retryMs", 5000L));
+    private final WriteAheadSpool spool = WriteAheadSpool.getInstance();
+
+    // Mientras System.nanoTime() < spoolUntilNanos los lotes van directos al spool
+    private volatile long spoolUntilNanos = 0;
+    private volatile boolean spoolMode = false;
+
+    private volatile boolean running = false;
+    private Thread worker;
+
+    // ---- métricas ----
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private final AtomicLong rowsRejected = new AtomicLong();
+    private final AtomicLong rowsSpooled = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong flushNanosTotal = new AtomicLong();
+    private final AtomicLong flushNanosMax = new AtomicLong();
+    private volatile long lastFlushNanos = 0;
+    private volatile double rowsPerSecond = 0;
+    private long windowStartNanos = System.nanoTime();
+    private long windowStartRows = 0;
+    private long lastStatsLogNanos = System.nanoTime();
+
+    private MeasurementBatchWriter() {}
+
+    public static MeasurementBatchWriter getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        worker = new Thread(this::runLoop, "informacion-batch-writer");
+        worker.setDaemon(true);
+        worker.start();
+        Log.logdb.info("MeasurementBatchWriter started (batchSize=" + batchSize
+                + ", maxLatencyMs=" + TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos) + ")");
+    }
+
+    /**
+     * Detiene el hilo escritor y vuelca lo que quede pendiente en la cola.
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ArrayList<Measurement> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (int from = 0; from < rest.size(); from += batchSize) {
+            writeBatch(rest.subList(from, Math.min(rest.size(), from + batchSize)));
+        }
+        Log.logdb.info("MeasurementBatchWriter stopped. Rows written=" + rowsWritten.get());
+    }
+
+    /**
+     * Encola una medida para el siguiente lote. Si el escritor no está
+     * arrancado la inserta directamente en el hilo llamante.
+     *
+     * @return false si la cola está llena, el spool no está disponible y la
+     *         medida se ha descartado
+     */
+    public boolean submit(Measurement m) {
+        if (!running) {
+            writeBatch(List.of(m));
+            return true;
+        }
+        if (queue.offer(m)) {
+            return true;
+        }
+        // Desbordamiento: sin forzar a disco por medida, se fuerza en bloque al reproducir
+        if (spool.append(List.of(m), false)) {
+            rowsSpooled.incrementAndGet();
+            return true;
+        }
+        rowsRejected.incrementAndGet();
+        Log.logdb.warn("Batch queue full, measurement of device " + m.getDispositivoSensorId() + " discarded");
+        return false;
+    }
+
+    // ===================== Bucle del escritor =====================
+
+    private void runLoop() {
+        ArrayList<Measurement> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Measurement first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    long deadline = System.nanoTime() + maxLatencyNanos;
+                    while (batch.size() < batchSize) {
+                        if (queue.drainTo(batch, batchSize - batch.size()) > 0) continue;
+                        long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) break;
+                        Measurement next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) break;
+                        batch.add(next);
+                    }
+                    writeBatch(batch);
+                    batch.clear();
+                }
+                updateRate();
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            } catch (Exception e) {
+                Log.logdb.error("Unexpected error in MeasurementBatchWriter", e);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Vuelca el lote en la base de datos o, si no está disponible, en el spool.
+     */
+    private void writeBatch(List<Measurement> batch) {
+        if (batch.isEmpty()) return;
+        if (spoolMode && System.nanoTime() < spoolUntilNanos && spool.append(batch)) {
+            rowsSpooled.addAndGet(batch.size());
+            return;
+        }
+        if (tryWrite(batch)) {
+            leaveSpoolMode();
+            return;
+        }
+        if (spool.append(batch)) {
+            rowsSpooled.addAndGet(batch.size());
+            if (!spoolMode) Log.logdb.warn("Database unavailable, spooling measurements locally");
+            spoolMode = true;
+            spoolUntilNanos = System.nanoTime() + spoolRetryNanos;
+        } else {
+            rowsFailed.addAndGet(batch.size());
+        }
+    }
+
+    /**
+     * Inserta un lote ya sacado del spool, en el hilo llamante.
+     *
+     * @return false si la base de datos sigue sin estar disponible
+     */
+    public boolean writeDirect(List<Measurement> batch) {
+        if (batch.isEmpty()) return true;
+        if (!tryWrite(batch)) return false;
+        leaveSpoolMode();
+        return true;
+    }
+
+    /**
+     * Inserta las filas en el hilo llamante, sin pasar por la cola ni el
+     * spool, e indica cuáles han quedado guardadas (las que ya estaban, por
+     * clave duplicada, cuentan como guardadas). Para el reproceso de la
+     * cuarentena, que solo marca lo que de verdad se ha escrito.
+     */
+    public boolean[] writeNow(List<Measurement> rows) {
+        boolean[] written = new boolean[rows.size()];
+        if (!rows.isEmpty() && tryWrite(rows, written)) leaveSpoolMode();
+        return written;
+    }
+
+    private void leaveSpoolMode() {
+        if (!spoolMode) return;
+        spoolMode = false;
+        Log.logdb.info("Database available again, leaving spool mode");
+    }
+
+    /**
+     * Inserta el lote en una sola transacción. Si el lote falla (p. ej. por
+     * una clave duplicada) se deshace y se reintenta fila a fila para no
+     * perder el resto de medidas.
+     *
+     * @return false si no se ha podido escribir nada (conexión o transacción
+     *         fallida); los errores de filas sueltas cuentan como escritas
+     */
+    private boolean tryWrite(List<Measurement> batch) {
+        return tryWrite(batch, null);
+    }
+
+    /**
+     * @param written si no es null, recibe qué filas han quedado guardadas
+     */
+    private boolean tryWrite(List<Measurement> batch, boolean[] written) {
+        long t0 = System.nanoTime();
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(false);
+
+            Map<Integer, String> devices = new LinkedHashMap<>();
+            for (Measurement m : batch) devices.putIfAbsent(m.getDispositivoSensorId(), m.getStreetId());
+            boolean created = false;
+            List<Integer> ensured = new ArrayList<>(devices.size());
+            for (Map.Entry<Integer, String> device : devices.entrySet()) {
+                int sensorId = device.getKey();
+                try {
+                    created |= DeviceDAO.ensureDeviceExists(con, sensorId, device.getValue());
+                    ensured.add(sensorId);
+                } catch (SQLException e) {
+                    Log.logdb.error("Error ensuring device " + sensorId + " exists in `dispositivo`", e);
+                }
+            }
+            // Los dispositivos nuevos se confirman aparte para que un rollback del lote no los deshaga
+            con.commit();
+            // Solo ahora pasan al registro en memoria y una recarga del catálogo los ve
+            for (int sensorId : ensured) DeviceDAO.markKnown(sensorId);
+            if (created) StreetCatalog.getInstance().invalidate();
+
+            try (PreparedStatement ps = ConectionDDBB.SetDataBatchBD(con)) {
+                for (Measurement m : batch) {
+                    bind(ps, m);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                con.commit();
+                rowsWritten.addAndGet(batch.size());
+                if (written != null) Arrays.fill(written, true);
+            } catch (BatchUpdateException e) {
+                conector.cancelTransaction(con);
+                Log.logdb.warn("Batch of " + batch.size() + " rows failed (" + e.getMessage() + "), retrying row by row");
+                writeRowByRow(con, batch, written);
+            }
+            // Las páginas cacheadas que pueden contener estas filas dejan de valer
+            QueryResultCache.getInstance().onStored(batch);
+            return true;
+        } catch (Exception e) {
+            if (con != null) conector.cancelTransaction(con);
+            Log.logdb.error("Error writing batch of " + batch.size() + " rows into `informacion`", e);
+            return false;
+        } finally {
+            conector.closeConnection(con);
+            recordFlush(System.nanoTime() - t0);
+        }
+    }
+
+    private void writeRowByRow(Connection con, List<Measurement> batch, boolean[] written) throws SQLException {
+        con.setAutoCommit(true);
+        try (PreparedStatement ps = ConectionDDBB.SetDataBatchBD(con)) {
+            for (int i = 0; i < batch.size(); i++) {
+                Measurement m = batch.get(i);
+                try {
+                    bind(ps, m);
+                    ps.executeUpdate();
+                    rowsWritten.incrementAndGet();
+                    if (written != null) written[i] = true;
+                } catch (SQLException e) {
+                    // La fila ya estaba guardada (clave primaria duplicada)
+                    if (written != null && e.getErrorCode() == ER_DUP_ENTRY) written[i] = true;
+                    rowsFailed.incrementAndGet();
+                    Log.logdb.error("Error inserting measurement of device " + m.getDispositivoSensorId()
+                            + " at " + m.getTimestamp() + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Measurement m) throws SQLException {
+        int idx = 1;
+        ps.setTimestamp(idx++, m.getTimestamp());
+        ps.setString(idx++, m.getCurrentState());
+        ps.setInt(idx++, m.getCyclePositionSeconds());
+        ps.setInt(idx++, m.getTimeRemainingSeconds());
+        ps.setInt(idx++, m.getCycleDurationSeconds());
+        ps.setString(idx++, m.getTrafficLightType());
+        ps.setString(idx++, m.getCirculationDirection());
+        // CHAR(1) lo guardamos como '1' (true) o '0' (false)
+        ps.setString(idx++, booleanToChar(m.getPedestrianWaiting()));
+        ps.setString(idx++, booleanToChar(m.getPedestrianButtonPressed()));
+        ps.setString(idx++, booleanToChar(m.getMalfunctionDetected()));
+        ps.setInt(idx++, m.getCycleCount());
+        ps.setString(idx++, booleanToChar(m.getStateChanged()));
+        // last_state_change en la tabla es CHAR(1); '1' si el mensaje traía fecha
+        String lastStateChange = m.getLastStateChange();
+        ps.setString(idx++, (lastStateChange != null && !lastStateChange.isEmpty()) ? "1" : "0");
+        ps.setInt(idx++, m.getDispositivoSensorId());
+    }
+
+    private static String booleanToChar(Boolean b) {
+        return Boolean.TRUE.equals(b) ? "1" : "0";
+    }
+
+    // ===================== Métricas =====================
+
+    private void recordFlush(long nanos) {
+        batches.incrementAndGet();
+        flushNanosTotal.addAndGet(nanos);
+        flushNanosMax.accumulateAndGet(nanos, Math::max);
+        lastFlushNanos = nanos;
+    }
+
+    private void updateRate() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStartNanos;
+        if (elapsed < RATE_WINDOW_NANOS) return;
+        long rows = rowsWritten.get();
+        rowsPerSecond = (rows - windowStartRows) * 1e9 / elapsed;
+        windowStartNanos = now;
+        windowStartRows = rows;
+        if (now - lastStatsLogNanos >= STATS_LOG_INTERVAL_NANOS) {
+            lastStatsLogNanos = now;
+            Log.logdb.info("MeasurementBatchWriter stats => " + stats());
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long n = batches.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("running", running);
+        s.put("queueDepth", queue.size());
+        s.put("rowsWritten", rowsWritten.get());
+        s.put("rowsFailed", rowsFailed.get());
+        s.put("rowsRejected", rowsRejected.get());
+        s.put("rowsSpooled", rowsSpooled.get());
+        s.put("spoolMode", spoolMode);
+        s.put("batches", n);
+        s.put("rowsPerSecond", Math.round(rowsPerSecond * 10) / 10.0);
+        s.put("lastFlushMs", lastFlushNanos / 1e6);
+        s.put("avgFlushMs", n == 0 ? 0 : flushNanosTotal.get() / 1e6 / n);
+        s.put("maxFlushMs", flushNanosMax.get() / 1e6);
+        return s;
+    }
+}
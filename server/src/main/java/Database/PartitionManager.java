@@ -0,0 +1,267 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.Log;
+
+/**
+ * Mantenimiento de las particiones por fecha de `informacion`.
+ *
+ * Cada ejecución parte `pmax` en particiones diarias o semanales hasta cubrir
+ * el periodo configurado por adelantado, y borra (o archiva en una tabla
+ * informacion_archive_pYYYYMMDD) las particiones cuyo límite superior ya
+ * queda fuera de la retención. Las particiones se llaman pYYYYMMDD por su
+ * límite superior exclusivo.
+ *
+ * Las filas que ya haya en `pmax` de días pasados (primera ejecución tras
+ * InformacionMigration, o tras una parada larga) se reparten en sus propias
+ * particiones desde el día de la más antigua, sin ir más atrás de la
+ * retención (o de maxBackfill periodos si no hay retención): lo anterior
+ * comparte la primera partición.
+ *
+ * En modo archive la partición solo se intercambia con una tabla de archivo
+ * vacía; si ya existe con filas (archivo previo, restauración a mano) se deja
+ * la partición en su sitio y se avisa, en lugar de perder esas filas.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.partition.granularity    day | week (day)
+ *  - ubicomp.partition.ahead          periodos futuros a crear (7)
+ *  - ubicomp.partition.retentionDays  días a conservar, 0 = sin límite (90)
+ *  - ubicomp.partition.mode           drop | archive (drop)
+ *  - ubicomp.partition.intervalMin    minutos entre ejecuciones (60)
+ *  - ubicomp.partition.maxBackfill    periodos pasados a crear como mucho sin retención (400)
+ */
+public class PartitionManager {
+
+    private static final PartitionManager INSTANCE = new PartitionManager();
+
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final boolean weekly = "week".equalsIgnoreCase(System.getProperty("ubicomp.partition.granularity", "day"));
+    private final int ahead = Integer.getInteger("ubicomp.partition.ahead", 7);
+    private final int retentionDays = Integer.getInteger("ubicomp.partition.retentionDays", 90);
+    private final boolean archive = "archive".equalsIgnoreCase(System.getProperty("ubicomp.partition.mode", "drop"));
+    private final long intervalMin = Long.getLong("ubicomp.partition.intervalMin", 60L);
+    private final int maxBackfill = Integer.getInteger("ubicomp.partition.maxBackfill", 400);
+
+    // ---- métricas ----
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong archiveConflicts = new AtomicLong();
+    private volatile int partitions = 0;
+    private volatile String lastRun = null;
+    private volatile String lastError = null;
+
+    private PartitionManager() {}
+
+    public static PartitionManager getInstance() {
+        return INSTANCE;
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        scheduler.scheduleWithFixedDelay(this::runSafely, 0, intervalMin, TimeUnit.MINUTES);
+        Log.logdb.info("PartitionManager scheduled every " + intervalMin + " min (granularity="
+                + (weekly ? "week" : "day") + ", ahead=" + ahead + ", retentionDays=" + retentionDays
+                + ", mode=" + (archive ? "archive" : "drop") + ")");
+    }
+
+    private void runSafely() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            maintain(con, LocalDate.now());
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.toString();
+            Log.logdb.error("Error maintaining partitions of `informacion`", e);
+        } finally {
+            conector.closeConnection(con);
+            lastRun = LocalDateTime.now().format(BOUND_FORMAT);
+        }
+    }
+
+    /**
+     * Crea las particiones futuras que falten y retira las caducadas.
+     */
+    public void maintain(Connection con, LocalDate today) throws SQLException {
+        List<LocalDate> bounds = readBounds(con);
+        if (bounds == null) {
+            Log.logdb.warn("`informacion` is not partitioned; run InformacionMigration to enable partition maintenance");
+            return;
+        }
+
+        // 1) Particiones por adelantado: límites hasta cubrir hoy + `ahead` periodos
+        LocalDate target = nextBoundary(today);
+        for (int i = 0; i < ahead; i++) target = step(target);
+        // Y hacia atrás, desde el día de la fila más antigua que haya en pmax
+        LocalDate lastBound = bounds.isEmpty() ? null : bounds.get(bounds.size() - 1);
+        LocalDate last = nextBoundary(today);
+        LocalDate oldest = oldestInPmax(con, lastBound);
+        if (oldest != null && nextBoundary(oldest).isBefore(last)) last = nextBoundary(oldest);
+        LocalDate floor = nextBoundary(today);
+        if (retentionDays > 0) {
+            floor = nextBoundary(today.minusDays(retentionDays));
+        } else {
+            for (int i = 0; i < maxBackfill; i++) floor = weekly ? floor.minusWeeks(1) : floor.minusDays(1);
+        }
+        if (last.isBefore(floor)) last = floor;
+        if (lastBound != null && !last.isAfter(lastBound)) last = step(lastBound);
+        List<LocalDate> toCreate = new ArrayList<>();
+        for (LocalDate b = last; !b.isAfter(target); b = step(b)) toCreate.add(b);
+        if (!toCreate.isEmpty()) {
+            StringBuilder sql = new StringBuilder("ALTER TABLE informacion REORGANIZE PARTITION pmax INTO (");
+            for (LocalDate b : toCreate) {
+                sql.append("PARTITION ").append(partitionName(b))
+                   .append(" VALUES LESS THAN ('").append(b.atStartOfDay().format(BOUND_FORMAT)).append("'), ");
+            }
+            sql.append("PARTITION pmax VALUES LESS THAN (MAXVALUE))");
+            execute(con, sql.toString());
+            created.addAndGet(toCreate.size());
+            bounds.addAll(toCreate);
+            Log.logdb.info("Created " + toCreate.size() + " partitions in `informacion` up to " + target);
+        }
+
+        // 2) Retención: fuera toda partición cuyo límite superior sea anterior al corte
+        if (retentionDays > 0) {
+            LocalDate cutoff = today.minusDays(retentionDays);
+            List<LocalDate> remaining = new ArrayList<>();
+            for (LocalDate b : bounds) {
+                if (b.isAfter(cutoff) || !expire(con, partitionName(b))) remaining.add(b);
+            }
+            bounds = remaining;
+        }
+        partitions = bounds.size() + 1;
+    }
+
+    /**
+     * @return false si la partición se ha dejado en su sitio (archivo ocupado)
+     */
+    private boolean expire(Connection con, String partition) throws SQLException {
+        if (archive) {
+            String archiveTable = "informacion_archive_" + partition;
+            if (!tableExists(con, archiveTable)) {
+                execute(con, "CREATE TABLE " + archiveTable + " LIKE informacion");
+                execute(con, "ALTER TABLE " + archiveTable + " REMOVE PARTITIONING");
+            } else if (!isEmpty(con, archiveTable)) {
+                // EXCHANGE metería esas filas en la partición y el DROP las borraría
+                archiveConflicts.incrementAndGet();
+                Log.logdb.warn("Archive table " + archiveTable + " is not empty; partition " + partition
+                        + " kept in `informacion` until it is moved or emptied");
+                return false;
+            }
+            execute(con, "ALTER TABLE informacion EXCHANGE PARTITION " + partition + " WITH TABLE " + archiveTable);
+            Log.logdb.info("Partition " + partition + " archived into " + archiveTable);
+        }
+        execute(con, "ALTER TABLE informacion DROP PARTITION " + partition);
+        expired.incrementAndGet();
+        Log.logdb.info("Partition " + partition + " removed from `informacion`");
+        return true;
+    }
+
+    /**
+     * @return día de la fila más antigua a partir de {@code from} (las filas
+     *         de pmax), o null si no hay ninguna
+     */
+    private static LocalDate oldestInPmax(Connection con, LocalDate from) throws SQLException {
+        String sql = "SELECT MIN(`timestamp`) FROM informacion" + (from != null ? " WHERE `timestamp` >= ?" : "");
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            if (from != null) ps.setTimestamp(1, Timestamp.valueOf(from.atStartOfDay()));
+            try (ResultSet rs = ps.executeQuery()) {
+                Timestamp min = rs.next() ? rs.getTimestamp(1) : null;
+                return min != null ? min.toLocalDateTime().toLocalDate() : null;
+            }
+        }
+    }
+
+    private static boolean isEmpty(Connection con, String table) throws SQLException {
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    /**
+     * @return límites superiores de las particiones (sin pmax) en orden, o
+     *         null si la tabla no está particionada
+     */
+    private static List<LocalDate> readBounds(Connection con) throws SQLException {
+        String sql = "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS " +
+                     "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'informacion' " +
+                     "ORDER BY PARTITION_ORDINAL_POSITION";
+        List<LocalDate> bounds = new ArrayList<>();
+        boolean partitioned = false;
+        try (PreparedStatement ps = con.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                String name = rs.getString(1);
+                if (name == null) return null;
+                partitioned = true;
+                String description = rs.getString(2);
+                if (description == null || description.toUpperCase().contains("MAXVALUE")) continue;
+                // RANGE COLUMNS devuelve el límite entre comillas: '2026-10-18 00:00:00'
+                String bound = description.replace("'", "").trim();
+                bounds.add(LocalDate.parse(bound.substring(0, 10)));
+            }
+        }
+        return partitioned ? bounds : null;
+    }
+
+    private static boolean tableExists(Connection con, String table) throws SQLException {
+        String sql = "SELECT 1 FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?";
+        try (PreparedStatement ps = con.prepareStatement(sql)) {
+            ps.setString(1, table);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void execute(Connection con, String sql) throws SQLException {
+        Log.logdb.debug("Partition DDL => " + sql);
+        try (Statement st = con.createStatement()) {
+            st.execute(sql);
+        }
+    }
+
+    private LocalDate nextBoundary(LocalDate day) {
+        return weekly ? day.with(TemporalAdjusters.next(DayOfWeek.MONDAY)) : day.plusDays(1);
+    }
+
+    private LocalDate step(LocalDate bound) {
+        return weekly ? bound.plusWeeks(1) : bound.plusDays(1);
+    }
+
+    private static String partitionName(LocalDate bound) {
+        return "p" + bound.format(NAME_FORMAT);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("partitions", partitions);
+        s.put("created", created.get());
+        s.put("expired", expired.get());
+        s.put("archiveConflicts", archiveConflicts.get());
+        s.put("lastRun", lastRun);
+        s.put("lastError", lastError);
+        return s;
+    }
+}
@@ -0,0 +1,131 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.Log;
+
+/**
+ * Vigila el retraso de la réplica a la que apunta jdbc/ubicomp-read y decide
+ * si las lecturas pueden ir a ella.
+ *
+ * Solo actúa con ubicomp.db.read.replica=true: entonces cada checkSec se
+ * consulta SHOW REPLICA STATUS (SHOW SLAVE STATUS en servidores anteriores a
+ * MariaDB 10.5) en el pool de lectura. Si Seconds_Behind_Master supera
+ * maxLagSec, es NULL (replicación parada) o la consulta falla, las lecturas
+ * pasan al primario hasta la siguiente comprobación correcta. Sin réplica (pool
+ * de solo lectura sobre el primario) las lecturas siempre están permitidas.
+ *
+ * El usuario del pool de lectura necesita el privilegio REPLICA MONITOR
+ * (o REPLICATION CLIENT).
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.db.read.replica        el pool de lectura es una réplica (false)
+ *  - ubicomp.db.replica.maxLagSec   retraso máximo admitido (5)
+ *  - ubicomp.db.replica.checkSec    periodo de comprobación (5)
+ */
+public class ReplicaMonitor {
+
+    private static final ReplicaMonitor INSTANCE = new ReplicaMonitor();
+
+    private final boolean replica = Boolean.getBoolean("ubicomp.db.read.replica");
+    private final long maxLagSec = Long.getLong("ubicomp.db.replica.maxLagSec", 5L);
+    private final long checkSec = Long.getLong("ubicomp.db.replica.checkSec", 5L);
+
+    // Hasta la primera comprobación no se confía en la réplica
+    private volatile boolean healthy = false;
+    private volatile Long lagSec = null;
+    private volatile boolean legacySyntax = false;
+
+    // ---- métricas ----
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong unhealthyChecks = new AtomicLong();
+    private volatile String lastError = null;
+
+    private ReplicaMonitor() {}
+
+    public static ReplicaMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        if (!replica) return;
+        scheduler.scheduleWithFixedDelay(this::check, 0, checkSec, TimeUnit.SECONDS);
+        Log.logdb.info("ReplicaMonitor scheduled every " + checkSec + " s (maxLagSec=" + maxLagSec + ")");
+    }
+
+    public boolean readsAllowed() {
+        return !replica || healthy;
+    }
+
+    private void check() {
+        checks.incrementAndGet();
+        boolean ok = false;
+        Connection con = null;
+        try {
+            con = ConectionDDBB.obtainReadPoolConnection();
+            if (con == null) {
+                lastError = "jdbc/ubicomp-read not configured";
+            } else {
+                Long lag = readLag(con);
+                lagSec = lag;
+                ok = lag != null && lag <= maxLagSec;
+                lastError = lag == null ? "replication not running" : null;
+            }
+        } catch (SQLException e) {
+            lagSec = null;
+            lastError = e.toString();
+        } finally {
+            new ConectionDDBB().closeConnection(con);
+        }
+        if (ok != healthy) {
+            if (ok) Log.logdb.info("Replica lag " + lagSec + " s: read queries routed to the replica");
+            else Log.logdb.warn("Replica unusable (lag=" + lagSec + " s, " + lastError + "): read queries routed to the primary");
+        }
+        if (!ok) unhealthyChecks.incrementAndGet();
+        healthy = ok;
+    }
+
+    /**
+     * @return Seconds_Behind_Master, o null si la replicación no está en marcha
+     */
+    private Long readLag(Connection con) throws SQLException {
+        if (!legacySyntax) {
+            try {
+                return readLag(con, "SHOW REPLICA STATUS");
+            } catch (SQLException e) {
+                // MariaDB < 10.5 / MySQL < 8.0.22
+                legacySyntax = true;
+            }
+        }
+        return readLag(con, "SHOW SLAVE STATUS");
+    }
+
+    private static Long readLag(Connection con, String sql) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql);
+             ResultSet rs = ps.executeQuery()) {
+            if (!rs.next()) return null;
+            long lag = rs.getLong("Seconds_Behind_Master");
+            return rs.wasNull() ? null : lag;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", replica);
+        s.put("readsAllowed", readsAllowed());
+        s.put("lagSec", lagSec);
+        s.put("maxLagSec", maxLagSec);
+        s.put("checks", checks.get());
+        s.put("unhealthyChecks", unhealthyChecks.get());
+        s.put("lastError", lastError);
+        return s;
+    }
+}
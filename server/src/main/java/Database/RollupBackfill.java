@@ -0,0 +1,179 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+
+/**
+ * Carga `informacion_rollup` a partir del histórico de `informacion`.
+ *
+ * Recorre el intervalo día a día. Los cubos por minuto y dispositivo salen de
+ * una sola pasada sobre las filas del día con funciones de ventana (LAG/LEAD
+ * por dispositivo, leyendo margen a cada lado para no perder los intervalos
+ * que cruzan la medianoche). Como en la ingesta, el tiempo de cada intervalo
+ * se reparte entre los minutos que cruza y "amber" cuenta como ámbar
+ * (ms_yellow). Los cubos por hora y los de calle se
+ * agregan después desde esos mismos cubos. Los cubos del intervalo se
+ * sustituyen, así que se puede relanzar sin duplicar.
+ *
+ * Pensado para el histórico anterior a activar los agregados en el servidor:
+ * sobre días que la ingesta ya agrega, en modo "solo cambios" contaría solo
+ * las filas guardadas.
+ *
+ * Uso (con el WAR en el classpath):
+ *   java -cp "WEB-INF/classes:WEB-INF/lib/*" Database.RollupBackfill \
+ *        jdbc:mariadb://ubicomp-db:3306/pecl2 pecl2_user pecl2_pass [desde yyyy-MM-dd] [hasta yyyy-MM-dd, exclusivo] [maxGapSec]
+ */
+public class RollupBackfill {
+
+    private static final String REPLACE_COUNTERS =
+        " ON DUPLICATE KEY UPDATE " +
+        "samples = VALUES(samples), button_presses = VALUES(button_presses), " +
+        "malfunction_samples = VALUES(malfunction_samples), state_changes = VALUES(state_changes), " +
+        "ms_green = VALUES(ms_green), ms_yellow = VALUES(ms_yellow), " +
+        "ms_red = VALUES(ms_red), ms_other = VALUES(ms_other)";
+
+    private static final String SUM_COUNTERS =
+        "SUM(samples), SUM(button_presses), SUM(malfunction_samples), SUM(state_changes), " +
+        "SUM(ms_green), SUM(ms_yellow), SUM(ms_red), SUM(ms_other)";
+
+    // Minuto × dispositivo desde las filas crudas. Cada fila da una pieza por
+    // minuto que cruza su intervalo (k = 0 el suyo, con las cuentas; k > 0 los
+    // siguientes, solo tiempo); se guardan las piezas cuyo minuto cae en el día,
+    // así que se leen también las filas de maxGapSec antes de empezar
+    private static String deviceMinutesSql(long maxGapSec) {
+        StringBuilder pieces = new StringBuilder("SELECT 0 AS k");
+        for (long k = 1; k <= maxGapSec / 60 + 1; k++) pieces.append(" UNION ALL SELECT ").append(k);
+        return
+        "INSERT INTO informacion_rollup (granularity, scope, scope_id, bucket, " + RollupStore.COUNTER_COLUMNS + ") " +
+        "SELECT 'm', 'd', CAST(q.dev AS CHAR), q.b, " +
+        "       SUM(q.sample), SUM(q.press), SUM(q.malf), SUM(q.chg), " +
+        "       SUM(CASE WHEN q.state = 'green' THEN q.ms ELSE 0 END), " +
+        "       SUM(CASE WHEN q.state IN ('amber', 'yellow') THEN q.ms ELSE 0 END), " +
+        "       SUM(CASE WHEN q.state = 'red' THEN q.ms ELSE 0 END), " +
+        "       SUM(CASE WHEN q.state IN ('green', 'amber', 'yellow', 'red') THEN 0 ELSE q.ms END) " +
+        "FROM (" +
+        " SELECT p.dev, p.b, p.state," +
+        "        CASE WHEN p.k = 0 THEN 1 ELSE 0 END AS sample," +
+        "        CASE WHEN p.k = 0 THEN p.press ELSE 0 END AS press," +
+        "        CASE WHEN p.k = 0 THEN p.malf ELSE 0 END AS malf," +
+        "        CASE WHEN p.k = 0 THEN p.chg ELSE 0 END AS chg," +
+        "        CASE WHEN p.timed = 1 THEN GREATEST(0, TIMESTAMPDIFF(MICROSECOND, GREATEST(p.ts, p.b)," +
+        "             LEAST(p.next_ts, p.b + INTERVAL 1 MINUTE)) DIV 1000) ELSE 0 END AS ms" +
+        " FROM (" +
+        "  SELECT t.*, n.k, CAST(DATE_FORMAT(t.ts, '%Y-%m-%d %H:%i:00') AS DATETIME) + INTERVAL n.k MINUTE AS b" +
+        "  FROM (" +
+        "   SELECT w.dev, w.ts, w.next_ts, w.state, w.malf," +
+        "          CASE WHEN w.pressed = '1' AND COALESCE(w.prev_pressed, '0') <> '1' AND w.prev_ts IS NOT NULL THEN 1 ELSE 0 END AS press," +
+        "          CASE WHEN w.prev_state IS NOT NULL AND w.prev_state <> w.state THEN 1 ELSE 0 END AS chg," +
+        "          CASE WHEN w.next_ts IS NOT NULL AND TIMESTAMPDIFF(MICROSECOND, w.ts, w.next_ts) <= ? * 1000000" +
+        "               THEN 1 ELSE 0 END AS timed" +
+        "   FROM (" +
+        "    SELECT i.dispositivo_sensor_id AS dev, i.`timestamp` AS ts, LOWER(i.current_state) AS state," +
+        "           CASE WHEN i.malfunction_detected = '1' THEN 1 ELSE 0 END AS malf," +
+        "           i.pedestrian_button_pressed AS pressed," +
+        "           LAG(i.pedestrian_button_pressed) OVER w AS prev_pressed," +
+        "           LAG(LOWER(i.current_state)) OVER w AS prev_state," +
+        "           LAG(i.`timestamp`) OVER w AS prev_ts," +
+        "           LEAD(i.`timestamp`) OVER w AS next_ts" +
+        "    FROM informacion i" +
+        "    WHERE i.`timestamp` >= ? - INTERVAL ? SECOND AND i.`timestamp` < ? + INTERVAL ? SECOND" +
+        "    WINDOW w AS (PARTITION BY i.dispositivo_sensor_id ORDER BY i.`timestamp`)" +
+        "   ) w" +
+        "   WHERE w.ts >= ? - INTERVAL ? SECOND AND w.ts < ?" +
+        "  ) t JOIN (" + pieces + ") n ON n.k = 0 OR t.timed = 1" +
+        " ) p" +
+        " WHERE p.b >= ? AND p.b < ? AND (p.k = 0 OR p.b < p.next_ts)" +
+        ") q GROUP BY q.dev, q.b" + REPLACE_COUNTERS;
+    }
+
+    // Hora × dispositivo desde los minutos
+    private static final String DEVICE_HOURS_SQL =
+        "INSERT INTO informacion_rollup (granularity, scope, scope_id, bucket, " + RollupStore.COUNTER_COLUMNS + ") " +
+        "SELECT 'h', 'd', r.scope_id, DATE_FORMAT(r.bucket, '%Y-%m-%d %H:00:00') AS b, " + SUM_COUNTERS +
+        " FROM informacion_rollup r WHERE r.granularity = 'm' AND r.scope = 'd' AND r.bucket >= ? AND r.bucket < ?" +
+        " GROUP BY r.scope_id, b" + REPLACE_COUNTERS;
+
+    // Calle desde los cubos de sus dispositivos (misma granularidad)
+    private static final String STREET_SQL =
+        "INSERT INTO informacion_rollup (granularity, scope, scope_id, bucket, " + RollupStore.COUNTER_COLUMNS + ") " +
+        "SELECT r.granularity, 's', d.calle_street_id, r.bucket, " + SUM_COUNTERS +
+        " FROM informacion_rollup r JOIN dispositivo d ON CAST(d.sensor_id AS CHAR) = r.scope_id" +
+        " WHERE r.granularity = ? AND r.scope = 'd' AND r.bucket >= ? AND r.bucket < ?" +
+        "   AND d.calle_street_id IS NOT NULL" +
+        " GROUP BY r.granularity, d.calle_street_id, r.bucket" + REPLACE_COUNTERS;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Uso: RollupBackfill <jdbcUrl> <usuario> <clave> [desde yyyy-MM-dd] [hasta yyyy-MM-dd] [maxGapSec]");
+            System.exit(1);
+        }
+        long maxGapSec = args.length > 5 ? Long.parseLong(args[5]) : 120L;
+
+        try (Connection con = DriverManager.getConnection(args[0], args[1], args[2])) {
+            con.setAutoCommit(true);
+            RollupStore.ensureTable(con);
+            LocalDate from = args.length > 3 ? LocalDate.parse(args[3]) : firstDay(con);
+            LocalDate to = args.length > 4 ? LocalDate.parse(args[4]) : LocalDate.now();
+            if (from == null) {
+                System.out.println("`informacion` está vacía. Nada que hacer.");
+                return;
+            }
+            backfill(con, from, to, maxGapSec);
+        }
+    }
+
+    public static void backfill(Connection con, LocalDate from, LocalDate to, long maxGapSec) throws SQLException {
+        String deviceMinutesSql = deviceMinutesSql(maxGapSec);
+        for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+            Timestamp start = Timestamp.valueOf(day.atStartOfDay());
+            Timestamp end = Timestamp.valueOf(day.plusDays(1).atStartOfDay());
+            int minutes;
+            try (PreparedStatement ps = con.prepareStatement(deviceMinutesSql)) {
+                int idx = 1;
+                ps.setLong(idx++, maxGapSec);
+                // Filas leídas: un hueco máximo antes (LAG y piezas que entran en el día) y después (LEAD)
+                ps.setTimestamp(idx++, start);
+                ps.setLong(idx++, 2 * maxGapSec);
+                ps.setTimestamp(idx++, end);
+                ps.setLong(idx++, maxGapSec);
+                // Filas cuyo intervalo puede caer en el día
+                ps.setTimestamp(idx++, start);
+                ps.setLong(idx++, maxGapSec);
+                ps.setTimestamp(idx++, end);
+                // Minutos del día
+                ps.setTimestamp(idx++, start);
+                ps.setTimestamp(idx++, end);
+                minutes = ps.executeUpdate();
+            }
+            try (PreparedStatement ps = con.prepareStatement(DEVICE_HOURS_SQL)) {
+                ps.setTimestamp(1, start);
+                ps.setTimestamp(2, end);
+                ps.executeUpdate();
+            }
+            for (char granularity : new char[] { RollupStore.MINUTE, RollupStore.HOUR }) {
+                try (PreparedStatement ps = con.prepareStatement(STREET_SQL)) {
+                    ps.setString(1, String.valueOf(granularity));
+                    ps.setTimestamp(2, start);
+                    ps.setTimestamp(3, end);
+                    ps.executeUpdate();
+                }
+            }
+            System.out.println(day + ": " + minutes + " filas de minuto por dispositivo");
+        }
+        System.out.println("Agregados cargados de " + from + " a " + to + " (exclusivo).");
+    }
+
+    private static LocalDate firstDay(Connection con) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement("SELECT MIN(`timestamp`) FROM informacion");
+             ResultSet rs = ps.executeQuery()) {
+            rs.next();
+            Timestamp min = rs.getTimestamp(1);
+            return min != null ? min.toLocalDateTime().toLocalDate() : null;
+        }
+    }
+}
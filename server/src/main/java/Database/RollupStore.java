@@ -0,0 +1,225 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import logic.RequestDeadline;
+
+/**
+ * Tabla de agregados `informacion_rollup`: una fila por (granularidad,
+ * ámbito, id, cubo) con contadores sumables, de modo que la ingesta puede
+ * volcar incrementos con INSERT ... ON DUPLICATE KEY UPDATE col = col + ?.
+ *
+ *  - granularity  'm' minuto | 'h' hora
+ *  - scope        'd' dispositivo (scope_id = sensor_id) | 's' calle (scope_id = street_id)
+ *  - ms_*         milisegundos en cada estado; cada intervalo entre dos medidas
+ *                 consecutivas se imputa al estado de la primera, repartido
+ *                 entre los cubos que cruza (un minuto nunca pasa de 60000 ms).
+ *                 El firmware envía "amber", que cuenta como ms_yellow
+ */
+public final class RollupStore {
+
+    public static final char MINUTE = 'm';
+    public static final char HOUR = 'h';
+    public static final char DEVICE = 'd';
+    public static final char STREET = 's';
+
+    static final String CREATE_SQL =
+        "CREATE TABLE IF NOT EXISTS informacion_rollup (" +
+        "  granularity          CHAR(1) NOT NULL," +
+        "  scope                CHAR(1) NOT NULL," +
+        "  scope_id             VARCHAR(50) NOT NULL," +
+        "  bucket               DATETIME NOT NULL," +
+        "  samples              INT NOT NULL DEFAULT 0," +
+        "  button_presses       INT NOT NULL DEFAULT 0," +
+        "  malfunction_samples  INT NOT NULL DEFAULT 0," +
+        "  state_changes        INT NOT NULL DEFAULT 0," +
+        "  ms_green             BIGINT NOT NULL DEFAULT 0," +
+        "  ms_yellow            BIGINT NOT NULL DEFAULT 0," +
+        "  ms_red               BIGINT NOT NULL DEFAULT 0," +
+        "  ms_other             BIGINT NOT NULL DEFAULT 0," +
+        "  PRIMARY KEY (granularity, scope, scope_id, bucket)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    static final String COUNTER_COLUMNS =
+        "samples, button_presses, malfunction_samples, state_changes, ms_green, ms_yellow, ms_red, ms_other";
+
+    private static final String UPSERT_SQL =
+        "INSERT INTO informacion_rollup (granularity, scope, scope_id, bucket, " + COUNTER_COLUMNS + ") " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON DUPLICATE KEY UPDATE " +
+        "samples = samples + VALUES(samples), " +
+        "button_presses = button_presses + VALUES(button_presses), " +
+        "malfunction_samples = malfunction_samples + VALUES(malfunction_samples), " +
+        "state_changes = state_changes + VALUES(state_changes), " +
+        "ms_green = ms_green + VALUES(ms_green), " +
+        "ms_yellow = ms_yellow + VALUES(ms_yellow), " +
+        "ms_red = ms_red + VALUES(ms_red), " +
+        "ms_other = ms_other + VALUES(ms_other)";
+
+    private static final String QUERY_SQL =
+        "SELECT bucket, " + COUNTER_COLUMNS + " FROM informacion_rollup " +
+        "WHERE granularity = ? AND scope = ? AND scope_id = ? AND bucket >= ? AND bucket < ? " +
+        "ORDER BY bucket";
+
+    private RollupStore() {}
+
+    /** Clave de una fila de la tabla. */
+    public static final class Key {
+        public final char granularity;
+        public final char scope;
+        public final String scopeId;
+        public final LocalDateTime bucket;
+
+        public Key(char granularity, char scope, String scopeId, LocalDateTime bucket) {
+            this.granularity = granularity;
+            this.scope = scope;
+            this.scopeId = scopeId;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return granularity == k.granularity && scope == k.scope
+                    && scopeId.equals(k.scopeId) && bucket.equals(k.bucket);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(granularity, scope, scopeId, bucket);
+        }
+    }
+
+    /** Contadores sumables de un cubo (o incrementos pendientes de volcar). */
+    public static final class Counters {
+        public long samples;
+        public long buttonPresses;
+        public long malfunctionSamples;
+        public long stateChanges;
+        public long msGreen;
+        public long msYellow;
+        public long msRed;
+        public long msOther;
+
+        public void addStateMillis(String state, long ms) {
+            if (ms <= 0) return;
+            if ("green".equalsIgnoreCase(state)) msGreen += ms;
+            else if ("amber".equalsIgnoreCase(state) || "yellow".equalsIgnoreCase(state)) msYellow += ms;
+            else if ("red".equalsIgnoreCase(state)) msRed += ms;
+            else msOther += ms;
+        }
+
+        public void add(Counters o) {
+            samples += o.samples;
+            buttonPresses += o.buttonPresses;
+            malfunctionSamples += o.malfunctionSamples;
+            stateChanges += o.stateChanges;
+            msGreen += o.msGreen;
+            msYellow += o.msYellow;
+            msRed += o.msRed;
+            msOther += o.msOther;
+        }
+
+        /** Vista JSON del cubo, con el reparto porcentual del tiempo medido. */
+        public Map<String, Object> toMap() {
+            long total = msGreen + msYellow + msRed + msOther;
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("samples", samples);
+            m.put("buttonPresses", buttonPresses);
+            m.put("malfunctionSamples", malfunctionSamples);
+            m.put("stateChanges", stateChanges);
+            m.put("msGreen", msGreen);
+            m.put("msYellow", msYellow);
+            m.put("msRed", msRed);
+            m.put("msOther", msOther);
+            m.put("pctGreen", pct(msGreen, total));
+            m.put("pctYellow", pct(msYellow, total));
+            m.put("pctRed", pct(msRed, total));
+            return m;
+        }
+
+        private static double pct(long part, long total) {
+            return total == 0 ? 0 : Math.round(part * 10000.0 / total) / 100.0;
+        }
+    }
+
+    public static void ensureTable(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_SQL);
+        }
+    }
+
+    /**
+     * Suma los incrementos a la tabla en un único lote (la conexión decide la transacción).
+     */
+    public static void upsert(Connection con, Map<Key, Counters> deltas) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<Key, Counters> e : deltas.entrySet()) {
+                Key k = e.getKey();
+                Counters c = e.getValue();
+                int idx = 1;
+                ps.setString(idx++, String.valueOf(k.granularity));
+                ps.setString(idx++, String.valueOf(k.scope));
+                ps.setString(idx++, k.scopeId);
+                ps.setTimestamp(idx++, Timestamp.valueOf(k.bucket));
+                ps.setLong(idx++, c.samples);
+                ps.setLong(idx++, c.buttonPresses);
+                ps.setLong(idx++, c.malfunctionSamples);
+                ps.setLong(idx++, c.stateChanges);
+                ps.setLong(idx++, c.msGreen);
+                ps.setLong(idx++, c.msYellow);
+                ps.setLong(idx++, c.msRed);
+                ps.setLong(idx++, c.msOther);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Cubos de [start, end) en orden cronológico.
+     */
+    public static List<Map<String, Object>> query(Connection con, char granularity, char scope, String scopeId,
+                                                  LocalDateTime start, LocalDateTime end, Counters totals)
+            throws SQLException {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(QUERY_SQL)) {
+            RequestDeadline.apply(ps);
+            ps.setString(1, String.valueOf(granularity));
+            ps.setString(2, String.valueOf(scope));
+            ps.setString(3, scopeId);
+            ps.setTimestamp(4, Timestamp.valueOf(start));
+            ps.setTimestamp(5, Timestamp.valueOf(end));
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Counters c = new Counters();
+                    c.samples = rs.getLong("samples");
+                    c.buttonPresses = rs.getLong("button_presses");
+                    c.malfunctionSamples = rs.getLong("malfunction_samples");
+                    c.stateChanges = rs.getLong("state_changes");
+                    c.msGreen = rs.getLong("ms_green");
+                    c.msYellow = rs.getLong("ms_yellow");
+                    c.msRed = rs.getLong("ms_red");
+                    c.msOther = rs.getLong("ms_other");
+                    totals.add(c);
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("bucket", rs.getTimestamp("bucket").toLocalDateTime().toString());
+                    row.putAll(c.toMap());
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,122 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reconstruye `informacion_transicion` desde el histórico de `informacion`,
+ * dispositivo a dispositivo (cada uno en su propia transacción corta).
+ *
+ * Aplica las mismas reglas que TransitionTracker con funciones de ventana:
+ * empieza tramo la primera fila, un cambio de fase (estado o duración de
+ * ciclo, ver TransitionStore), state_changed = '1' o
+ * un hueco mayor que maxGapSec respecto a la fila anterior (islas por suma
+ * acumulada de esas marcas). Cada tramo termina donde empieza el siguiente,
+ * salvo tras un hueco, que termina en su última fila. El último tramo de cada
+ * dispositivo sigue abierto y no se guarda: lo continúa el servidor.
+ *
+ * Uso (con el WAR en el classpath):
+ *   java -cp "WEB-INF/classes:WEB-INF/lib/*" Database.TransitionRebuild \
+ *        jdbc:mariadb://ubicomp-db:3306/pecl2 pecl2_user pecl2_pass [maxGapSec] [sensorId]
+ */
+public class TransitionRebuild {
+
+    private static final String DELETE_SQL =
+        "DELETE FROM informacion_transicion WHERE dispositivo_sensor_id = ?";
+
+    private static final String REBUILD_SQL =
+        "INSERT IGNORE INTO informacion_transicion " +
+        "(dispositivo_sensor_id, start_ts, end_ts, state, cycle_duration_seconds, duration_ms, cycle_count) " +
+        "SELECT g.dev, g.start_ts, g.end_ts, g.state, g.cycle_duration, " +
+        "       TIMESTAMPDIFF(MICROSECOND, g.start_ts, g.end_ts) DIV 1000, g.cycle_count " +
+        "FROM (" +
+        "  SELECT s.dev, s.start_ts, s.state, s.cycle_duration, s.cycle_count," +
+        "         CASE WHEN s.next_start IS NOT NULL" +
+        "                   AND TIMESTAMPDIFF(MICROSECOND, s.last_ts, s.next_start) <= ? * 1000000" +
+        "              THEN s.next_start ELSE s.last_ts END AS end_ts," +
+        "         s.next_start" +
+        "  FROM (" +
+        "    SELECT isl.dev, isl.grp, MIN(isl.ts) AS start_ts, MAX(isl.ts) AS last_ts," +
+        "           MIN(isl.state) AS state, MIN(isl.cycle_duration) AS cycle_duration," +
+        "           MIN(isl.start_cycle) AS cycle_count," +
+        "           LEAD(MIN(isl.ts)) OVER (PARTITION BY isl.dev ORDER BY isl.grp) AS next_start" +
+        "    FROM (" +
+        "      SELECT b.dev, b.ts, b.state, b.cycle_duration," +
+        "             CASE WHEN b.boundary = 1 THEN b.cycle_count END AS start_cycle," +
+        "             SUM(b.boundary) OVER (PARTITION BY b.dev ORDER BY b.ts ROWS UNBOUNDED PRECEDING) AS grp" +
+        "      FROM (" +
+        "        SELECT i.dispositivo_sensor_id AS dev, i.`timestamp` AS ts, i.current_state AS state," +
+        "               i.cycle_duration_seconds AS cycle_duration, i.cycle_count," +
+        "               CASE WHEN LAG(i.`timestamp`) OVER w IS NULL" +
+        "                      OR NOT (LAG(i.current_state) OVER w <=> i.current_state)" +
+        "                      OR NOT (LAG(i.cycle_duration_seconds) OVER w <=> i.cycle_duration_seconds)" +
+        "                      OR i.state_changed = '1'" +
+        "                      OR TIMESTAMPDIFF(MICROSECOND, LAG(i.`timestamp`) OVER w, i.`timestamp`) > ? * 1000000" +
+        "                    THEN 1 ELSE 0 END AS boundary" +
+        "        FROM informacion i WHERE i.dispositivo_sensor_id = ?" +
+        "        WINDOW w AS (ORDER BY i.`timestamp`)" +
+        "      ) b" +
+        "    ) isl GROUP BY isl.dev, isl.grp" +
+        "  ) s" +
+        ") g WHERE g.next_start IS NOT NULL AND g.end_ts > g.start_ts";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Uso: TransitionRebuild <jdbcUrl> <usuario> <clave> [maxGapSec] [sensorId]");
+            System.exit(1);
+        }
+        long maxGapSec = args.length > 3 ? Long.parseLong(args[3]) : 120L;
+        Integer only = args.length > 4 ? Integer.valueOf(args[4]) : null;
+
+        try (Connection con = DriverManager.getConnection(args[0], args[1], args[2])) {
+            TransitionStore.ensureTable(con);
+            List<Integer> devices = only != null ? List.of(only) : devices(con);
+            long total = 0;
+            for (int device : devices) {
+                int rows = rebuild(con, device, maxGapSec);
+                total += rows;
+                System.out.println("Dispositivo " + device + ": " + rows + " tramos");
+            }
+            System.out.println("Reconstrucción completada: " + total + " tramos.");
+        }
+    }
+
+    /**
+     * Sustituye los tramos del dispositivo por los calculados desde `informacion`.
+     *
+     * @return tramos insertados
+     */
+    public static int rebuild(Connection con, int device, long maxGapSec) throws SQLException {
+        con.setAutoCommit(false);
+        try (PreparedStatement del = con.prepareStatement(DELETE_SQL);
+             PreparedStatement ins = con.prepareStatement(REBUILD_SQL)) {
+            del.setInt(1, device);
+            del.executeUpdate();
+            ins.setLong(1, maxGapSec);
+            ins.setLong(2, maxGapSec);
+            ins.setInt(3, device);
+            int rows = ins.executeUpdate();
+            con.commit();
+            return rows;
+        } catch (SQLException e) {
+            con.rollback();
+            throw e;
+        } finally {
+            con.setAutoCommit(true);
+        }
+    }
+
+    private static List<Integer> devices(Connection con) throws SQLException {
+        List<Integer> out = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT sensor_id FROM dispositivo ORDER BY sensor_id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) out.add(rs.getInt(1));
+        }
+        return out;
+    }
+}
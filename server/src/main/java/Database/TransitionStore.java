@@ -0,0 +1,193 @@
+package Database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import logic.RequestDeadline;
+
+/**
+ * Tabla de intervalos de estado `informacion_transicion`: una fila por cada
+ * tramo en que un dispositivo estuvo en la misma fase, con inicio, fin,
+ * duración y el cycle_count al empezar. Solo se guardan tramos cerrados; el
+ * tramo en curso de cada dispositivo vive en memoria (TransitionTracker).
+ *
+ * La fase es (current_state, cycle_duration_seconds): el firmware reporta
+ * "red" en las tres fases de peatones (todo rojo antes, verde peatonal, todo
+ * rojo después) y solo las distingue la duración de ciclo que publica en
+ * cada una. Ver {@link #phaseOf(String, Integer)}.
+ */
+public final class TransitionStore {
+
+    static final String CREATE_SQL =
+        "CREATE TABLE IF NOT EXISTS informacion_transicion (" +
+        "  dispositivo_sensor_id  INT NOT NULL," +
+        "  start_ts               DATETIME(3) NOT NULL," +
+        "  end_ts                 DATETIME(3) NOT NULL," +
+        "  state                  VARCHAR(30)," +
+        "  cycle_duration_seconds INT," +
+        "  duration_ms            BIGINT NOT NULL," +
+        "  cycle_count            INT," +
+        "  PRIMARY KEY (dispositivo_sensor_id, start_ts)," +
+        "  KEY informacion_transicion_start_idx (start_ts)" +
+        ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4";
+
+    // Tablas creadas antes de distinguir las fases
+    static final String ADD_CYCLE_DURATION_SQL =
+        "ALTER TABLE informacion_transicion ADD COLUMN IF NOT EXISTS cycle_duration_seconds INT AFTER state";
+
+    // Un tramo reenviado (reinicio, reconstrucción) no se duplica
+    private static final String INSERT_SQL =
+        "INSERT IGNORE INTO informacion_transicion " +
+        "(dispositivo_sensor_id, start_ts, end_ts, state, cycle_duration_seconds, duration_ms, cycle_count) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String LAST_ENDS_SQL =
+        "SELECT dispositivo_sensor_id, MAX(end_ts) FROM informacion_transicion GROUP BY dispositivo_sensor_id";
+
+    private TransitionStore() {}
+
+    /** Tramo cerrado. */
+    public static final class Interval {
+        public final int deviceId;
+        public final long startMillis;
+        public final long endMillis;
+        public final String state;
+        public final Integer cycleDurationSeconds;
+        public final Integer cycleCount;
+
+        public Interval(int deviceId, long startMillis, long endMillis, String state,
+                        Integer cycleDurationSeconds, Integer cycleCount) {
+            this.deviceId = deviceId;
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.state = state;
+            this.cycleDurationSeconds = cycleDurationSeconds;
+            this.cycleCount = cycleCount;
+        }
+    }
+
+    /**
+     * Nombre de la fase: el estado, seguido de la duración de ciclo si se
+     * conoce ("red/1s" todo rojo antes de peatones, "red/12s" verde peatonal,
+     * "red/0s" todo rojo de vuelta, con los tiempos de config.h del ESP32).
+     */
+    public static String phaseOf(String state, Integer cycleDurationSeconds) {
+        return cycleDurationSeconds == null ? state : state + "/" + cycleDurationSeconds + "s";
+    }
+
+    public static void ensureTable(Connection con) throws SQLException {
+        try (Statement st = con.createStatement()) {
+            st.execute(CREATE_SQL);
+            st.execute(ADD_CYCLE_DURATION_SQL);
+        }
+    }
+
+    public static void insert(Connection con, List<Interval> intervals) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(INSERT_SQL)) {
+            for (Interval t : intervals) {
+                ps.setInt(1, t.deviceId);
+                ps.setTimestamp(2, new Timestamp(t.startMillis));
+                ps.setTimestamp(3, new Timestamp(t.endMillis));
+                ps.setString(4, t.state);
+                if (t.cycleDurationSeconds != null) ps.setInt(5, t.cycleDurationSeconds);
+                else ps.setNull(5, java.sql.Types.INTEGER);
+                ps.setLong(6, t.endMillis - t.startMillis);
+                if (t.cycleCount != null) ps.setInt(7, t.cycleCount);
+                else ps.setNull(7, java.sql.Types.INTEGER);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * @return fin (ms) del último tramo guardado de cada dispositivo
+     */
+    public static Map<Integer, Long> lastEnds(Connection con) throws SQLException {
+        Map<Integer, Long> ends = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement(LAST_ENDS_SQL);
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ends.put(rs.getInt(1), rs.getTimestamp(2).getTime());
+            }
+        }
+        return ends;
+    }
+
+    /**
+     * Tramos de un dispositivo que empiezan en [start, end), opcionalmente de
+     * un estado, en orden cronológico. {@code summary} y {@code phases}
+     * reciben por estado y por fase el número de tramos y la duración total,
+     * media y máxima.
+     */
+    public static List<Map<String, Object>> query(Connection con, int deviceId, Timestamp start, Timestamp end,
+                                                  String state, int limit, Map<String, Map<String, Object>> summary,
+                                                  Map<String, Map<String, Object>> phases)
+            throws SQLException {
+        StringBuilder sql = new StringBuilder(
+                "SELECT start_ts, end_ts, state, cycle_duration_seconds, duration_ms, cycle_count " +
+                "FROM informacion_transicion " +
+                "WHERE dispositivo_sensor_id = ? AND start_ts >= ? AND start_ts < ?");
+        if (state != null) sql.append(" AND state = ?");
+        sql.append(" ORDER BY start_ts LIMIT ?");
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        try (PreparedStatement ps = con.prepareStatement(sql.toString())) {
+            RequestDeadline.apply(ps);
+            int idx = 1;
+            ps.setInt(idx++, deviceId);
+            ps.setTimestamp(idx++, start);
+            ps.setTimestamp(idx++, end);
+            if (state != null) ps.setString(idx++, state);
+            ps.setInt(idx, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    String s = rs.getString("state");
+                    int cd = rs.getInt("cycle_duration_seconds");
+                    Integer cycleDuration = rs.wasNull() ? null : cd;
+                    String phase = phaseOf(s, cycleDuration);
+                    long duration = rs.getLong("duration_ms");
+                    Map<String, Object> row = new LinkedHashMap<>();
+                    row.put("start", rs.getTimestamp("start_ts").toLocalDateTime().toString());
+                    row.put("end", rs.getTimestamp("end_ts").toLocalDateTime().toString());
+                    row.put("state", s);
+                    row.put("phase", phase);
+                    row.put("durationMs", duration);
+                    int cycle = rs.getInt("cycle_count");
+                    row.put("cycleCount", rs.wasNull() ? null : cycle);
+                    rows.add(row);
+
+                    accumulate(summary, String.valueOf(s), duration);
+                    accumulate(phases, String.valueOf(phase), duration);
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void accumulate(Map<String, Map<String, Object>> summary, String key, long duration) {
+        Map<String, Object> agg = summary.computeIfAbsent(key, k -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("intervals", 0L);
+            m.put("totalMs", 0L);
+            m.put("avgMs", 0L);
+            m.put("maxMs", 0L);
+            return m;
+        });
+        long n = (Long) agg.get("intervals") + 1;
+        long total = (Long) agg.get("totalMs") + duration;
+        agg.put("intervals", n);
+        agg.put("totalMs", total);
+        agg.put("avgMs", total / n);
+        agg.put("maxMs", Math.max((Long) agg.get("maxMs"), duration));
+    }
+}
@@ -0,0 +1,515 @@
+package Database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import logic.Log;
+import logic.Measurement;
+
+/**
+ * Spool local de medidas (write-ahead) para cuando MariaDB no está disponible
+ * o el escritor por lotes no da abasto.
+ *
+ * Las medidas se añaden a segmentos de tamaño fijo mapeados en memoria
+ * (spool-NNNNNNNNNNNN.seg). Cada registro es [longitud int][crc32 int][medida
+ * codificada]; una longitud 0 marca el final de lo escrito (el segmento se
+ * crea relleno de ceros) y al llenarse se pasa al siguiente segmento.
+ *
+ * Un reproductor periódico lee desde el punto de control (fichero
+ * "checkpoint": segmento + offset), inserta por lotes con
+ * MeasurementBatchWriter.writeDirect y solo avanza el checkpoint cuando el
+ * lote se ha confirmado. Un segmento solo se da por consumido (y se borra)
+ * cuando ya está cerrado y se ha leído hasta su marca de fin. Al arrancar se
+ * recorre el último segmento para encontrar el final válido (un registro a
+ * medio escribir no pasa el CRC y se descarta).
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.spool.enabled           activar el spool (true)
+ *  - ubicomp.spool.dir               directorio (${catalina.base}/spool o tmp)
+ *  - ubicomp.spool.segmentBytes      tamaño de cada segmento (16 MB)
+ *  - ubicomp.spool.fsync             forzar a disco tras cada escritura (true); las
+ *                                    medidas sueltas que desbordan la cola se fuerzan
+ *                                    juntas en la siguiente pasada del reproductor
+ *  - ubicomp.spool.replayBatch       medidas por lote al reproducir (500)
+ *  - ubicomp.spool.replayIntervalMs  periodo del reproductor (2000)
+ */
+public class WriteAheadSpool {
+
+    private static final WriteAheadSpool INSTANCE = new WriteAheadSpool();
+
+    private static final String SEGMENT_PREFIX = "spool-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final int HEADER_BYTES = 8;
+    // Una medida codificada ocupa ~100 bytes; esto solo protege de basura al leer
+    private static final int MAX_RECORD_BYTES = 64 * 1024;
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("ubicomp.spool.enabled", "true"));
+    private final int segmentBytes = Integer.getInteger("ubicomp.spool.segmentBytes", 16 * 1024 * 1024);
+    private final boolean fsync = Boolean.parseBoolean(System.getProperty("ubicomp.spool.fsync", "true"));
+    private final int replayBatch = Integer.getInteger("ubicomp.spool.replayBatch", 500);
+    private final long replayIntervalMs = Long.getLong("ubicomp.spool.replayIntervalMs", 2000L);
+
+    private Path dir;
+    private volatile boolean open = false;
+
+    // ---- segmento activo (protegido por this) ----
+    private long writeSeq;
+    private FileChannel writeChannel;
+    private MappedByteBuffer writeBuffer;
+    // Final de lo escrito, publicado para el reproductor (segmento y posición juntos)
+    private volatile Mark published = new Mark(0, 0);
+    // Hay registros escritos sin forzar a disco
+    private boolean dirty = false;
+
+    // ---- punto de control (solo el hilo reproductor) ----
+    private long readSeq;
+    private int readPos;
+
+    // ---- métricas ----
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong corrupt = new AtomicLong();
+    private final AtomicLong appendFailures = new AtomicLong();
+    private volatile long oldestPendingMillis = 0;
+    private volatile String lastError = null;
+
+    private WriteAheadSpool() {}
+
+    private static final class Mark {
+        final long seq;
+        final int pos;
+
+        Mark(long seq, int pos) {
+            this.seq = seq;
+            this.pos = pos;
+        }
+    }
+
+    public static WriteAheadSpool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Abre el directorio, recupera el checkpoint y el final del último segmento.
+     */
+    public synchronized void open() {
+        if (!enabled || open) return;
+        try {
+            dir = Paths.get(System.getProperty("ubicomp.spool.dir", defaultDir()));
+            Files.createDirectories(dir);
+            TreeMap<Long, Path> segments = listSegments();
+
+            long[] checkpoint = readCheckpoint();
+            if (checkpoint != null && segments.containsKey(checkpoint[0])) {
+                readSeq = checkpoint[0];
+                readPos = (int) checkpoint[1];
+            } else {
+                readSeq = segments.isEmpty() ? 1 : segments.firstKey();
+                readPos = 0;
+            }
+
+            writeSeq = segments.isEmpty() ? readSeq : segments.lastKey();
+            mapSegment(writeSeq);
+            writeBuffer.position(scanEnd(writeBuffer));
+            publish();
+            open = true;
+            Log.logdb.info("WriteAheadSpool opened at " + dir + " (segments=" + Math.max(1, segments.size())
+                    + ", pendingBytes=" + pendingBytes() + ")");
+        } catch (IOException e) {
+            lastError = e.toString();
+            Log.logdb.error("WriteAheadSpool disabled: cannot open spool directory " + dir, e);
+        }
+    }
+
+    public synchronized void close() {
+        if (!open) return;
+        open = false;
+        if (fsync) writeBuffer.force();
+        closeQuietly(writeChannel);
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        if (!enabled) return;
+        scheduler.scheduleWithFixedDelay(this::replay, replayIntervalMs, replayIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Añade las medidas al spool.
+     *
+     * @return false si el spool no está disponible (las medidas no se han guardado)
+     */
+    public boolean append(List<Measurement> batch) {
+        return append(batch, fsync);
+    }
+
+    /**
+     * @param sync forzar a disco ya; si no, se fuerza en la siguiente pasada
+     *             del reproductor (para las medidas sueltas del desbordamiento)
+     */
+    public synchronized boolean append(List<Measurement> batch, boolean sync) {
+        if (!open) return false;
+        try {
+            for (Measurement m : batch) {
+                byte[] record = encode(m);
+                if (writeBuffer.remaining() < HEADER_BYTES + record.length + 4) {
+                    rollover();
+                }
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                writeBuffer.putInt(HEADER_BYTES + record.length);
+                writeBuffer.putInt((int) crc.getValue());
+                writeBuffer.put(record);
+            }
+            if (sync) {
+                writeBuffer.force();
+                dirty = false;
+            } else {
+                dirty = fsync;
+            }
+            publish();
+            appended.addAndGet(batch.size());
+            if (oldestPendingMillis == 0) oldestPendingMillis = System.currentTimeMillis();
+            return true;
+        } catch (IOException | RuntimeException e) {
+            appendFailures.addAndGet(batch.size());
+            lastError = e.toString();
+            Log.logdb.error("Error appending " + batch.size() + " measurements to the spool", e);
+            return false;
+        }
+    }
+
+    public boolean hasBacklog() {
+        Mark mark = published;
+        return open && (readSeq != mark.seq || readPos != mark.pos);
+    }
+
+    private synchronized void syncIfDirty() {
+        if (open && dirty) {
+            writeBuffer.force();
+            dirty = false;
+        }
+    }
+
+    // ===================== Reproducción =====================
+
+    /**
+     * Vuelca a la base de datos lo pendiente, lote a lote, hasta alcanzar el
+     * final escrito o hasta que falle un lote (se reintenta en la siguiente pasada).
+     */
+    private void replay() {
+        if (!open) return;
+        try {
+            syncIfDirty();
+            while (hasBacklog()) {
+                long seq = readSeq;
+                int pos = readPos;
+                // Una sola lectura: segmento y posición publicados son coherentes entre sí
+                Mark mark = published;
+                boolean closed = seq < mark.seq;
+                // Solo un segmento cerrado puede terminarse (marca de fin o registro corrupto)
+                boolean sawEnd = false;
+                List<Measurement> batch = new ArrayList<>(replayBatch);
+                long firstSpooledAt = 0;
+                try (FileChannel ch = FileChannel.open(segmentPath(seq), StandardOpenOption.READ)) {
+                    int end = closed ? (int) ch.size() : mark.pos;
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    while (batch.size() < replayBatch) {
+                        if (pos + 4 > end || (closed && pos + HEADER_BYTES > end)) {
+                            // Un segmento cerrado siempre deja sitio para la marca de fin
+                            sawEnd = closed;
+                            break;
+                        }
+                        if (pos + HEADER_BYTES > end) break;
+                        header.clear();
+                        ch.read(header, pos);
+                        header.flip();
+                        int len = header.getInt();
+                        int crc = header.getInt();
+                        if (len == 0) {
+                            sawEnd = closed;    // marca de fin de lo escrito
+                            break;
+                        }
+                        if (len < HEADER_BYTES || len > MAX_RECORD_BYTES || pos + len > end) {
+                            corruptTail(seq, pos);
+                            sawEnd = closed;
+                            break;
+                        }
+                        ByteBuffer body = ByteBuffer.allocate(len - HEADER_BYTES);
+                        ch.read(body, pos + HEADER_BYTES);
+                        CRC32 check = new CRC32();
+                        check.update(body.array());
+                        if ((int) check.getValue() != crc) {
+                            corruptTail(seq, pos);
+                            sawEnd = closed;
+                            break;
+                        }
+                        long[] spooledAt = new long[1];
+                        batch.add(decode(body.array(), spooledAt));
+                        if (firstSpooledAt == 0) firstSpooledAt = spooledAt[0];
+                        pos += len;
+                    }
+
+                    if (!batch.isEmpty()) {
+                        oldestPendingMillis = firstSpooledAt;
+                        if (!MeasurementBatchWriter.getInstance().writeDirect(batch)) {
+                            return;             // BD aún caída: se reintenta en la siguiente pasada
+                        }
+                        replayed.addAndGet(batch.size());
+                    }
+                    if (sawEnd) {
+                        advance(seq + 1, 0);
+                        Files.deleteIfExists(segmentPath(seq));
+                    } else {
+                        advance(seq, pos);
+                        if (batch.isEmpty()) break;
+                    }
+                }
+            }
+            if (!hasBacklog()) oldestPendingMillis = 0;
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.toString();
+            Log.logdb.error("Error replaying the spool", e);
+        }
+    }
+
+    private void corruptTail(long seq, int pos) {
+        corrupt.incrementAndGet();
+        Log.logdb.error("Corrupt spool record in segment " + seq + " at offset " + pos
+                + "; rest of the segment skipped");
+    }
+
+    private void advance(long seq, int pos) throws IOException {
+        readSeq = seq;
+        readPos = pos;
+        // Escritura atómica: el checkpoint nunca queda a medias
+        Path tmp = dir.resolve("checkpoint.tmp");
+        Files.write(tmp, (seq + ":" + pos).getBytes(StandardCharsets.US_ASCII));
+        Files.move(tmp, dir.resolve("checkpoint"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ===================== Segmentos =====================
+
+    private void rollover() throws IOException {
+        writeBuffer.force();
+        dirty = false;
+        closeQuietly(writeChannel);
+        writeSeq++;
+        mapSegment(writeSeq);
+        publish();
+        Log.logdb.info("Spool rolled over to segment " + writeSeq);
+    }
+
+    private void mapSegment(long seq) throws IOException {
+        writeChannel = FileChannel.open(segmentPath(seq),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeBuffer = writeChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+    }
+
+    private void publish() {
+        published = new Mark(writeSeq, writeBuffer.position());
+    }
+
+    /**
+     * Posición tras el último registro válido del segmento.
+     */
+    private static int scanEnd(ByteBuffer segment) {
+        ByteBuffer b = segment.duplicate();
+        int pos = 0;
+        while (pos + HEADER_BYTES <= b.limit()) {
+            int len = b.getInt(pos);
+            if (len < HEADER_BYTES || len > MAX_RECORD_BYTES || pos + len > b.limit()) break;
+            int crc = b.getInt(pos + 4);
+            byte[] body = new byte[len - HEADER_BYTES];
+            b.position(pos + HEADER_BYTES);
+            b.get(body);
+            CRC32 check = new CRC32();
+            check.update(body);
+            if ((int) check.getValue() != crc) break;
+            pos += len;
+        }
+        return pos;
+    }
+
+    private TreeMap<Long, Path> listSegments() throws IOException {
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (var stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path p : stream) {
+                String name = p.getFileName().toString();
+                try {
+                    segments.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                            name.length() - SEGMENT_SUFFIX.length())), p);
+                } catch (NumberFormatException ignored) {
+                    // fichero ajeno al spool
+                }
+            }
+        }
+        return segments;
+    }
+
+    private long[] readCheckpoint() {
+        try {
+            Path p = dir.resolve("checkpoint");
+            if (!Files.exists(p)) return null;
+            String[] parts = new String(Files.readAllBytes(p), StandardCharsets.US_ASCII).trim().split(":");
+            return new long[] { Long.parseLong(parts[0]), Long.parseLong(parts[1]) };
+        } catch (IOException | RuntimeException e) {
+            Log.logdb.warn("Unreadable spool checkpoint, replaying from the first segment: " + e);
+            return null;
+        }
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, seq, SEGMENT_SUFFIX));
+    }
+
+    private static String defaultDir() {
+        String base = System.getProperty("catalina.base");
+        return base != null ? base + File.separator + "spool"
+                            : System.getProperty("java.io.tmpdir") + File.separator + "ubicomp-spool";
+    }
+
+    private static void closeQuietly(FileChannel ch) {
+        try {
+            if (ch != null) ch.close();
+        } catch (IOException ignored) {
+            // nada que hacer
+        }
+    }
+
+    // ===================== Codificación =====================
+
+    private static final int NULL_INT = Integer.MIN_VALUE;
+
+    private static byte[] encode(Measurement m) {
+        ByteBuffer b = ByteBuffer.allocate(512);
+        b.putLong(System.currentTimeMillis());                 // momento del spool (lag)
+        b.putLong(m.getTimestamp().getTime());
+        b.putInt(m.getDispositivoSensorId());
+        putInt(b, m.getCyclePositionSeconds());
+        putInt(b, m.getTimeRemainingSeconds());
+        putInt(b, m.getCycleDurationSeconds());
+        putInt(b, m.getCycleCount());
+        putBoolean(b, m.getPedestrianWaiting());
+        putBoolean(b, m.getPedestrianButtonPressed());
+        putBoolean(b, m.getMalfunctionDetected());
+        putBoolean(b, m.getStateChanged());
+        putString(b, m.getCurrentState());
+        putString(b, m.getTrafficLightType());
+        putString(b, m.getCirculationDirection());
+        putString(b, m.getLastStateChange());
+        putString(b, m.getStreetId());
+        byte[] out = new byte[b.position()];
+        b.flip();
+        b.get(out);
+        return out;
+    }
+
+    private static Measurement decode(byte[] record, long[] spooledAt) {
+        ByteBuffer b = ByteBuffer.wrap(record);
+        spooledAt[0] = b.getLong();
+        Measurement m = new Measurement();
+        m.setTimestamp(new Timestamp(b.getLong()));
+        m.setDispositivoSensorId(b.getInt());
+        m.setCyclePositionSeconds(getInt(b));
+        m.setTimeRemainingSeconds(getInt(b));
+        m.setCycleDurationSeconds(getInt(b));
+        m.setCycleCount(getInt(b));
+        m.setPedestrianWaiting(getBoolean(b));
+        m.setPedestrianButtonPressed(getBoolean(b));
+        m.setMalfunctionDetected(getBoolean(b));
+        m.setStateChanged(getBoolean(b));
+        m.setCurrentState(getString(b));
+        m.setTrafficLightType(getString(b));
+        m.setCirculationDirection(getString(b));
+        m.setLastStateChange(getString(b));
+        m.setStreetId(getString(b));
+        return m;
+    }
+
+    private static void putInt(ByteBuffer b, Integer v) {
+        b.putInt(v == null ? NULL_INT : v);
+    }
+
+    private static Integer getInt(ByteBuffer b) {
+        int v = b.getInt();
+        return v == NULL_INT ? null : v;
+    }
+
+    private static void putBoolean(ByteBuffer b, Boolean v) {
+        b.put((byte) (v == null ? 2 : v ? 1 : 0));
+    }
+
+    private static Boolean getBoolean(ByteBuffer b) {
+        byte v = b.get();
+        return v == 2 ? null : v == 1;
+    }
+
+    // Cadenas cortas: longitud (short, -1 = null) + UTF-8, recortadas a 100 bytes
+    private static void putString(ByteBuffer b, String s) {
+        if (s == null) {
+            b.putShort((short) -1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int len = Math.min(bytes.length, 100);
+        b.putShort((short) len);
+        b.put(bytes, 0, len);
+    }
+
+    private static String getString(ByteBuffer b) {
+        short len = b.getShort();
+        if (len < 0) return null;
+        byte[] bytes = new byte[len];
+        b.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ===================== Métricas =====================
+
+    private long pendingBytes() {
+        Mark mark = published;
+        if (readSeq == mark.seq) return Math.max(0, mark.pos - readPos);
+        // Segmentos completos intermedios + resto del actual de lectura + lo escrito en el activo
+        return (mark.seq - readSeq) * (long) segmentBytes - readPos + mark.pos;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("open", open);
+        s.put("appended", appended.get());
+        s.put("replayed", replayed.get());
+        s.put("appendFailures", appendFailures.get());
+        s.put("corrupt", corrupt.get());
+        s.put("segments", open ? published.seq - readSeq + 1 : 0);
+        s.put("pendingBytes", open ? pendingBytes() : 0);
+        long oldest = oldestPendingMillis;
+        s.put("lagMs", oldest == 0 ? 0 : System.currentTimeMillis() - oldest);
+        s.put("lastError", lastError);
+        return s;
+    }
+}
@@ -0,0 +1,111 @@
+package logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Modo de persistencia "solo cambios" (opcional).
+ *
+ * El ESP32 publica el estado completo cada pocos segundos aunque no cambie
+ * nada; en este modo solo se guarda una fila en `informacion` cuando
+ * state_changed viene a true, cuando cambia alguno de los campos vigilados
+ * respecto a la medida anterior del dispositivo, o cuando han pasado
+ * heartbeatSec desde la última fila guardada (latido, para saber que el
+ * dispositivo sigue vivo). La caché de último estado y el tracker de comandos
+ * siguen viendo todas las medidas.
+ *
+ * Campos vigilados: current_state, traffic_light_type, circulation_direction,
+ * pedestrian_waiting, pedestrian_button_pressed, malfunction_detected y
+ * cycle_duration_seconds. La posición en el ciclo y el tiempo restante no se
+ * vigilan: avanzan en cada mensaje y se deducen de la fila anterior.
+ *
+ * Cada fila guardada vale hasta la siguiente del mismo dispositivo; para
+ * reconstruir la línea temporal de un intervalo, GetDataFiltered con
+ * fill=true añade la última fila anterior al inicio (ver Logic).
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.ingest.changeOnly    activar el modo (false)
+ *  - ubicomp.ingest.heartbeatSec  latido máximo entre filas guardadas (60)
+ */
+public class ChangeOnlyFilter {
+
+    private static final ChangeOnlyFilter INSTANCE = new ChangeOnlyFilter();
+
+    private final boolean enabled = Boolean.getBoolean("ubicomp.ingest.changeOnly");
+    private final long heartbeatMillis = Long.getLong("ubicomp.ingest.heartbeatSec", 60L) * 1000L;
+
+    // Timestamp de la última fila guardada por dispositivo
+    private final ConcurrentHashMap<Integer, Long> lastPersisted = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong changes = new AtomicLong();
+    private final AtomicLong heartbeats = new AtomicLong();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    private ChangeOnlyFilter() {}
+
+    public static ChangeOnlyFilter getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param previous medida anterior del dispositivo (de LatestStateCache), o null
+     * @return true si la medida debe guardarse en `informacion`
+     */
+    public boolean shouldPersist(Measurement previous, Measurement m) {
+        if (!enabled) return true;
+        Integer device = m.getDispositivoSensorId();
+        long ts = m.getTimestamp().getTime();
+
+        boolean changed = previous == null
+                || Boolean.TRUE.equals(m.getStateChanged())
+                // Una medida atrasada no se puede comparar con la anterior: se guarda
+                || m.getTimestamp().before(previous.getTimestamp())
+                || differs(previous, m);
+        if (changed) {
+            changes.incrementAndGet();
+            lastPersisted.put(device, ts);
+            return true;
+        }
+        Long last = lastPersisted.get(device);
+        if (last == null || ts - last >= heartbeatMillis) {
+            heartbeats.incrementAndGet();
+            lastPersisted.put(device, ts);
+            return true;
+        }
+        suppressed.incrementAndGet();
+        return false;
+    }
+
+    private static boolean differs(Measurement a, Measurement b) {
+        return !Objects.equals(a.getCurrentState(), b.getCurrentState())
+                || !Objects.equals(a.getTrafficLightType(), b.getTrafficLightType())
+                || !Objects.equals(a.getCirculationDirection(), b.getCirculationDirection())
+                || !Objects.equals(a.getPedestrianWaiting(), b.getPedestrianWaiting())
+                || !Objects.equals(a.getPedestrianButtonPressed(), b.getPedestrianButtonPressed())
+                || !Objects.equals(a.getMalfunctionDetected(), b.getMalfunctionDetected())
+                || !Objects.equals(a.getCycleDurationSeconds(), b.getCycleDurationSeconds());
+    }
+
+    public Map<String, Object> stats() {
+        long c = changes.get();
+        long h = heartbeats.get();
+        long s = suppressed.get();
+        long total = c + h + s;
+        Map<String, Object> out = new LinkedHashMap<>();
+        out.put("enabled", enabled);
+        out.put("heartbeatSec", heartbeatMillis / 1000);
+        out.put("changes", c);
+        out.put("heartbeats", h);
+        out.put("suppressed", s);
+        out.put("suppressedRatio", total == 0 ? 0 : Math.round(s * 10000.0 / total) / 10000.0);
+        return out;
+    }
+}
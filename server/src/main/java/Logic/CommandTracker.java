@@ -0,0 +1,225 @@
+package logic;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencia de ida y vuelta de los comandos force (comando → efecto visible).
+ *
+ * Cada comando lleva un id de correlación ("cid" en el payload) y se apunta
+ * como pendiente con la hora de envío. La ingesta llama a onMeasurement con
+ * cada medición: la primera del dispositivo, recibida después del envío, que
+ * supone un cambio de estado (state_changed=true o current_state distinto del
+ * anterior) hacia uno de los estados de efecto cierra los comandos pendientes
+ * de ese dispositivo y registra la latencia en los histogramas global, por
+ * dispositivo y por calle. La latencia se mide con el reloj del servidor
+ * (envío → llegada), no con el timestamp del ESP32.
+ *
+ * El firmware no publica "ped_green": durante el paso de peatones (y el todo
+ * rojo previo) el estado vehicular es "red", así que por defecto cuenta como
+ * efecto el primer paso a "red" tras el comando.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.cmd.effectStates  estados que confirman el comando (ped_green,red)
+ *  - ubicomp.cmd.timeoutMs     tras este tiempo sin efecto, el comando caduca (60000)
+ */
+public class CommandTracker {
+
+    private static final CommandTracker INSTANCE = new CommandTracker();
+
+    // Comandos caducados que se conservan para consultarlos
+    private static final int RECENT_TIMEOUTS = 200;
+
+    private final long timeoutMs = Long.getLong("ubicomp.cmd.timeoutMs", 60000L);
+    private final Set<String> effectStates = new HashSet<>(Arrays.asList(
+            System.getProperty("ubicomp.cmd.effectStates", "ped_green,red").toLowerCase(Locale.ROOT).split("\\s*,\\s*")));
+
+    private final ConcurrentHashMap<Integer, ConcurrentLinkedQueue<PendingCommand>> pending = new ConcurrentHashMap<>();
+    private final ArrayDeque<PendingCommand> timedOut = new ArrayDeque<>();
+
+    private final LatencyHistogram global = new LatencyHistogram();
+    private final ConcurrentHashMap<Integer, LatencyHistogram> byDevice = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> byStreet = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong tracked = new AtomicLong();
+    private final AtomicLong matched = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    /**
+     * Comando enviado que aún no ha tenido efecto (o que caducó).
+     */
+    public static final class PendingCommand {
+        final String cid;
+        final String action;
+        final String streetId;
+        final int deviceId;
+        final long sentAtMillis;
+
+        PendingCommand(String cid, String action, String streetId, int deviceId, long sentAtMillis) {
+            this.cid = cid;
+            this.action = action;
+            this.streetId = streetId;
+            this.deviceId = deviceId;
+            this.sentAtMillis = sentAtMillis;
+        }
+
+        Map<String, Object> toMap(long now) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("cid", cid);
+            m.put("action", action);
+            m.put("streetId", streetId);
+            m.put("deviceId", deviceId);
+            m.put("sentAt", new java.sql.Timestamp(sentAtMillis).toString());
+            m.put("ageMs", now - sentAtMillis);
+            return m;
+        }
+    }
+
+    private CommandTracker() {}
+
+    public static CommandTracker getInstance() {
+        return INSTANCE;
+    }
+
+    public static String newCorrelationId() {
+        return UUID.randomUUID().toString();
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        long period = Math.max(1000L, timeoutMs / 10);
+        scheduler.scheduleWithFixedDelay(this::expire, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apunta un comando como enviado ahora.
+     */
+    public void track(String cid, String action, String streetId, int deviceId) {
+        pending.computeIfAbsent(deviceId, k -> new ConcurrentLinkedQueue<>())
+               .add(new PendingCommand(cid, action, streetId, deviceId, System.currentTimeMillis()));
+        tracked.incrementAndGet();
+    }
+
+    /**
+     * Retira un comando que no se llegó a publicar.
+     */
+    public void cancel(String cid, int deviceId) {
+        ConcurrentLinkedQueue<PendingCommand> q = pending.get(deviceId);
+        if (q != null && q.removeIf(c -> c.cid.equals(cid))) {
+            cancelled.incrementAndGet();
+        }
+    }
+
+    /**
+     * Llamado por la ingesta con cada medición decodificada y la anterior del
+     * mismo dispositivo (null si no había).
+     */
+    public void onMeasurement(Measurement previous, Measurement current) {
+        Integer device = current.getDispositivoSensorId();
+        if (device == null) return;
+        ConcurrentLinkedQueue<PendingCommand> q = pending.get(device);
+        if (q == null || q.isEmpty()) return;
+
+        String state = current.getCurrentState();
+        if (state == null || !effectStates.contains(state.toLowerCase(Locale.ROOT))) return;
+        boolean changed = Boolean.TRUE.equals(current.getStateChanged())
+                || previous == null
+                || !state.equalsIgnoreCase(String.valueOf(previous.getCurrentState()));
+        if (!changed) return;
+
+        long now = System.currentTimeMillis();
+        PendingCommand c;
+        while ((c = q.poll()) != null) {
+            long latency = now - c.sentAtMillis;
+            global.record(latency);
+            byDevice.computeIfAbsent(c.deviceId, k -> new LatencyHistogram()).record(latency);
+            if (c.streetId != null) {
+                byStreet.computeIfAbsent(c.streetId, k -> new LatencyHistogram()).record(latency);
+            }
+            matched.incrementAndGet();
+            Log.log.debug("Command " + c.cid + " to device " + c.deviceId + " took effect in " + latency + " ms");
+        }
+    }
+
+    private void expire() {
+        long limit = System.currentTimeMillis() - timeoutMs;
+        for (ConcurrentLinkedQueue<PendingCommand> q : pending.values()) {
+            for (Iterator<PendingCommand> it = q.iterator(); it.hasNext(); ) {
+                PendingCommand c = it.next();
+                if (c.sentAtMillis < limit && q.remove(c)) {
+                    expired.incrementAndGet();
+                    Log.log.warn("Command " + c.cid + " (" + c.action + ") to device " + c.deviceId
+                            + " had no visible effect after " + timeoutMs + " ms");
+                    synchronized (timedOut) {
+                        if (timedOut.size() == RECENT_TIMEOUTS) timedOut.removeFirst();
+                        timedOut.addLast(c);
+                    }
+                }
+            }
+        }
+    }
+
+    public List<Map<String, Object>> pendingCommands() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ConcurrentLinkedQueue<PendingCommand> q : pending.values()) {
+            for (PendingCommand c : q) out.add(c.toMap(now));
+        }
+        return out;
+    }
+
+    public List<Map<String, Object>> timedOutCommands() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> out = new ArrayList<>();
+        synchronized (timedOut) {
+            for (PendingCommand c : timedOut) out.add(c.toMap(now));
+        }
+        return out;
+    }
+
+    public Map<String, Object> latencyByDevice() {
+        Map<String, Object> out = new TreeMap<>();
+        byDevice.forEach((k, v) -> out.put(String.valueOf(k), v.snapshot()));
+        return out;
+    }
+
+    public Map<String, Object> latencyByStreet() {
+        Map<String, Object> out = new TreeMap<>();
+        byStreet.forEach((k, v) -> out.put(k, v.snapshot()));
+        return out;
+    }
+
+    public Map<String, Object> latency() {
+        return global.snapshot();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        int waiting = 0;
+        for (ConcurrentLinkedQueue<PendingCommand> q : pending.values()) waiting += q.size();
+        s.put("tracked", tracked.get());
+        s.put("matched", matched.get());
+        s.put("timedOut", expired.get());
+        s.put("cancelled", cancelled.get());
+        s.put("pending", waiting);
+        s.put("p50Ms", global.percentile(0.50));
+        s.put("p99Ms", global.percentile(0.99));
+        return s;
+    }
+}
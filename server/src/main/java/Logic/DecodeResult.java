@@ -0,0 +1,17 @@
+package logic;
+
+/**
+ * Resultado de TelemetryDecoder.decode. Todo lo que no sea OK se manda a la
+ * cuarentena (`informacion_dead_letter`) con este código como motivo.
+ */
+public enum DecodeResult {
+    OK,
+    EMPTY_PAYLOAD,        // payload vacío o solo espacios
+    NOT_AN_OBJECT,        // no empieza por '{'
+    MALFORMED_JSON,       // JSON mal formado o truncado
+    BAD_FIELD_TYPE,       // campo numérico/booleano con un valor que no lo es
+    MISSING_SENSOR_ID,
+    BAD_TIMESTAMP,        // falta timestamp o no es ISO-8601
+    MISSING_STATE,        // falta data.current_state
+    MISSING_FIELDS        // faltan campos obligatorios del bloque data
+}
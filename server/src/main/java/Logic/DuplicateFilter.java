@@ -0,0 +1,109 @@
+package logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Filtro de duplicados de la telemetría.
+ *
+ * El suscriptor usa QoS 1 con cleanSession=false, así que tras una reconexión
+ * el broker puede volver a entregar mensajes ya procesados. Cada dispositivo
+ * tiene un anillo con las claves (timestamp, cycle_count) de sus últimas
+ * medidas; una medida cuya clave ya está en el anillo se descarta antes de
+ * tocar la caché, el tracker de comandos o la base de datos.
+ *
+ * La memoria está acotada: window claves por dispositivo (12 bytes cada una)
+ * y como mucho maxDevices dispositivos; los que no caben no se filtran.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.dedup.enabled     activar el filtro (true)
+ *  - ubicomp.dedup.window      claves recordadas por dispositivo (64)
+ *  - ubicomp.dedup.maxDevices  dispositivos con anillo (10000)
+ */
+public class DuplicateFilter {
+
+    private static final DuplicateFilter INSTANCE = new DuplicateFilter();
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("ubicomp.dedup.enabled", "true"));
+    private final int window = Math.max(1, Integer.getInteger("ubicomp.dedup.window", 64));
+    private final int maxDevices = Integer.getInteger("ubicomp.dedup.maxDevices", 10000);
+
+    private final ConcurrentHashMap<Integer, Ring> rings = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong checked = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong untracked = new AtomicLong();
+
+    private DuplicateFilter() {}
+
+    public static DuplicateFilter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registra la clave de la medida.
+     *
+     * @return true si la medida ya se había visto y debe descartarse
+     */
+    public boolean isDuplicate(int sensorId, long timestampMillis, int cycleCount) {
+        if (!enabled) return false;
+        checked.incrementAndGet();
+        Ring ring = rings.get(sensorId);
+        if (ring == null) {
+            if (rings.size() >= maxDevices) {
+                untracked.incrementAndGet();
+                return false;
+            }
+            ring = rings.computeIfAbsent(sensorId, id -> new Ring(window));
+        }
+        if (ring.checkAndAdd(timestampMillis, cycleCount)) {
+            duplicates.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Anillo de las últimas claves de un dispositivo. La búsqueda es lineal:
+     * con 64 entradas es más barata que cualquier estructura con hash.
+     */
+    private static final class Ring {
+        private final long[] timestamps;
+        private final int[] cycles;
+        private int size = 0;
+        private int next = 0;
+
+        Ring(int capacity) {
+            timestamps = new long[capacity];
+            cycles = new int[capacity];
+        }
+
+        synchronized boolean checkAndAdd(long timestampMillis, int cycleCount) {
+            for (int i = 0; i < size; i++) {
+                if (timestamps[i] == timestampMillis && cycles[i] == cycleCount) return true;
+            }
+            timestamps[next] = timestampMillis;
+            cycles[next] = cycleCount;
+            next = (next + 1) % timestamps.length;
+            if (size < timestamps.length) size++;
+            return false;
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long n = checked.get();
+        long d = duplicates.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("window", window);
+        s.put("devices", rings.size());
+        s.put("checked", n);
+        s.put("duplicates", d);
+        s.put("hitRate", n == 0 ? 0 : Math.round(d * 10000.0 / n) / 10000.0);
+        s.put("untracked", untracked.get());
+        return s;
+    }
+}
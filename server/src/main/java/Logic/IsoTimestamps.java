@@ -0,0 +1,123 @@
+package logic;
+
+/**
+ * Parser de marcas ISO-8601 de formato fijo, sin pasar por java.time.
+ *
+ * Acepta "yyyy-MM-ddTHH:mm:ss", con fracción opcional de 1 a 9 dígitos
+ * (se conservan los milisegundos) y zona opcional "Z", "+HH:MM" o "+HHMM".
+ * Sin zona se interpreta como UTC. Es el formato que genera isoNow() en el ESP32.
+ *
+ * Rechaza fechas inexistentes (31 de febrero, 29 de febrero fuera de bisiesto)
+ * y el segundo intercalar 60, igual que Instant.parse.
+ */
+public class IsoTimestamps {
+
+    /** Valor devuelto cuando la cadena no tiene el formato esperado. */
+    public static final long INVALID = Long.MIN_VALUE;
+
+    private IsoTimestamps() {}
+
+    /**
+     * @return milisegundos desde epoch, o INVALID si la cadena no es válida
+     */
+    public static long parseEpochMillis(CharSequence s) {
+        int len = s.length();
+        if (len < 19
+                || s.charAt(4) != '-' || s.charAt(7) != '-'
+                || (s.charAt(10) != 'T' && s.charAt(10) != ' ')
+                || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            return INVALID;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int pos = 19;
+        int millis = 0;
+        if (pos < len && s.charAt(pos) == '.') {
+            pos++;
+            int start = pos;
+            while (pos < len && isDigit(s.charAt(pos))) {
+                if (pos - start < 3) millis = millis * 10 + (s.charAt(pos) - '0');
+                pos++;
+            }
+            int n = pos - start;
+            if (n == 0 || n > 9) return INVALID;
+            for (int i = n; i < 3; i++) millis *= 10;
+        }
+
+        int offsetSeconds = 0;
+        if (pos < len) {
+            char c = s.charAt(pos);
+            if (c == 'Z' || c == 'z') {
+                pos++;
+            } else if (c == '+' || c == '-') {
+                int oh, om;
+                if (len - pos == 6 && s.charAt(pos + 3) == ':') {
+                    oh = digits(s, pos + 1, 2);
+                    om = digits(s, pos + 4, 2);
+                } else if (len - pos == 5) {
+                    oh = digits(s, pos + 1, 2);
+                    om = digits(s, pos + 3, 2);
+                } else {
+                    return INVALID;
+                }
+                if (oh < 0 || oh > 18 || om < 0 || om > 59) return INVALID;
+                offsetSeconds = (oh * 3600 + om * 60) * (c == '-' ? -1 : 1);
+                pos = len;
+            } else {
+                return INVALID;
+            }
+        }
+        if (pos != len) return INVALID;
+
+        long epochDay = daysFromCivil(year, month, day);
+        long epochSecond = epochDay * 86400L + hour * 3600L + minute * 60L + second - offsetSeconds;
+        return epochSecond * 1000L + millis;
+    }
+
+    static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4: case 6: case 9: case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Días desde 1970-01-01 para una fecha del calendario gregoriano proléptico.
+     */
+    static long daysFromCivil(int y, int m, int d) {
+        y -= m <= 2 ? 1 : 0;
+        long era = Math.floorDiv(y, 400);
+        long yoe = y - era * 400;
+        long doy = (153L * (m + (m > 2 ? -3 : 9)) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    private static int digits(CharSequence s, int from, int count) {
+        int v = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) return -1;
+            v = v * 10 + (c - '0');
+        }
+        return v;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
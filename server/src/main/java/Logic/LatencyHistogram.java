@@ -0,0 +1,80 @@
+package logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de latencias con cubetas logarítmicas (potencias de 2 en ms).
+ *
+ * La cubeta i cuenta las muestras en (2^(i-1), 2^i] ms; la última recoge todo
+ * lo que supera 2^(BUCKETS-2) ms. Los percentiles se aproximan por el límite
+ * superior de la cubeta, suficiente para informar del SLO. Sin bloqueos.
+ */
+public class LatencyHistogram {
+
+    // 1 ms .. ~262 s, más la cubeta de desbordamiento
+    private static final int BUCKETS = 20;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+
+    public void record(long ms) {
+        if (ms < 0) ms = 0;
+        counts.incrementAndGet(bucketOf(ms));
+        count.incrementAndGet();
+        sumMs.addAndGet(ms);
+        maxMs.accumulateAndGet(ms, Math::max);
+    }
+
+    private static int bucketOf(long ms) {
+        if (ms <= 1) return 0;
+        int b = 64 - Long.numberOfLeadingZeros(ms - 1);   // ceil(log2(ms))
+        return Math.min(b, BUCKETS - 1);
+    }
+
+    private static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * @return límite superior (ms) de la cubeta que contiene el percentil q
+     */
+    public long percentile(double q) {
+        long total = count.get();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return i == BUCKETS - 1 ? maxMs.get() : upperBound(i);
+        }
+        return maxMs.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        long n = count.get();
+        s.put("count", n);
+        s.put("avgMs", n == 0 ? 0.0 : (double) sumMs.get() / n);
+        s.put("p50Ms", percentile(0.50));
+        s.put("p90Ms", percentile(0.90));
+        s.put("p99Ms", percentile(0.99));
+        s.put("maxMs", maxMs.get());
+        // Solo cubetas no vacías: "<=límite ms" → muestras
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            long c = counts.get(i);
+            if (c > 0) buckets.put(i == BUCKETS - 1 ? ">" + upperBound(i - 1) : "<=" + upperBound(i), c);
+        }
+        s.put("buckets", buckets);
+        return s;
+    }
+}
@@ -0,0 +1,141 @@
+package logic;
+
+import Database.ConectionDDBB;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Última medición conocida de cada semáforo, en memoria.
+ *
+ * La ingesta MQTT la actualiza con cada mensaje decodificado (antes de que
+ * llegue a la base de datos) y al arrancar se carga desde `informacion` con
+ * la fila más reciente de cada dispositivo. GetLatestState lee de aquí, así
+ * que el estado actual de un semáforo o de una calle no consulta MariaDB.
+ *
+ * La calle de cada dispositivo es la de `dispositivo` (StreetCatalog), no la
+ * que trae el mensaje, igual que en GetDevicesByStreet y GetDataFiltered.
+ */
+public class LatestStateCache {
+
+    private static final LatestStateCache INSTANCE = new LatestStateCache();
+
+    // Fila más reciente por dispositivo: la clave (dispositivo, timestamp)
+    // permite resolver el MAX de cada dispositivo recorriendo solo el índice
+    private static final String WARM_SQL =
+        "SELECT i.*, d.calle_street_id FROM informacion i " +
+        "JOIN (SELECT dispositivo_sensor_id, MAX(`timestamp`) AS ts FROM informacion " +
+        "      GROUP BY dispositivo_sensor_id) l " +
+        "  ON l.dispositivo_sensor_id = i.dispositivo_sensor_id AND l.ts = i.`timestamp` " +
+        "LEFT JOIN dispositivo d ON d.sensor_id = i.dispositivo_sensor_id";
+
+    private static final Comparator<Measurement> BY_DEVICE =
+        Comparator.comparing(Measurement::getDispositivoSensorId);
+
+    private final ConcurrentHashMap<Integer, Measurement> latest = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private volatile int warmed = 0;
+
+    private LatestStateCache() {}
+
+    public static LatestStateCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sustituye la medición del dispositivo si es más reciente que la guardada.
+     * Si el mensaje no trae calle se conserva la que ya se conocía.
+     *
+     * @return la medición que había antes (null si es la primera)
+     */
+    public Measurement update(Measurement m) {
+        Integer device = m.getDispositivoSensorId();
+        if (device == null || m.getTimestamp() == null) return null;
+        Measurement[] previous = new Measurement[1];
+        latest.compute(device, (k, old) -> {
+            previous[0] = old;
+            if (old == null) return m;
+            if (m.getTimestamp().before(old.getTimestamp())) {
+                outOfOrder.incrementAndGet();
+                return old;
+            }
+            if (m.getStreetId() == null) m.setStreetId(old.getStreetId());
+            return m;
+        });
+        updates.incrementAndGet();
+        return previous[0];
+    }
+
+    /**
+     * Carga la última fila de cada dispositivo desde la base de datos.
+     * No pisa lo que la ingesta haya guardado ya si es más reciente.
+     */
+    public void warm() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        int rows = 0;
+        try {
+            con = conector.obtainConnection(true);
+            try (PreparedStatement ps = con.prepareStatement(WARM_SQL);
+                 ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    Measurement m = Logic.mapMeasurement(rs);
+                    m.setStreetId(rs.getString("calle_street_id"));
+                    latest.merge(m.getDispositivoSensorId(), m,
+                        (cur, db) -> db.getTimestamp().after(cur.getTimestamp()) ? db : cur);
+                    rows++;
+                }
+            }
+            warmed = rows;
+            Log.logdb.info("Latest-state cache warmed with " + rows + " devices");
+        } catch (Exception e) {
+            Log.logdb.error("Error warming latest-state cache", e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    public Measurement getDevice(int deviceId) {
+        reads.incrementAndGet();
+        return latest.get(deviceId);
+    }
+
+    /**
+     * @return últimas mediciones de la calle (o de todas si streetId es null),
+     *         ordenadas por dispositivo
+     */
+    public ArrayList<Measurement> getStreet(String streetId) {
+        reads.incrementAndGet();
+        ArrayList<Measurement> out = new ArrayList<>();
+        // Una sola versión del catálogo para toda la petición, sin recargarlo
+        StreetCatalog.StreetResolver streets = StreetCatalog.getInstance().cachedStreets();
+        for (Measurement m : latest.values()) {
+            if (streetId == null || streetId.equals(streets.resolve(m.getDispositivoSensorId(), m.getStreetId()))) {
+                out.add(m);
+            }
+        }
+        out.sort(BY_DEVICE);
+        return out;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("devices", latest.size());
+        s.put("warmed", warmed);
+        s.put("updates", updates.get());
+        s.put("outOfOrder", outOfOrder.get());
+        s.put("reads", reads.get());
+        return s;
+    }
+}
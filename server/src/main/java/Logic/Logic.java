@@ -1,74 +1,77 @@
 package logic;
 
 import Database.ConectionDDBB;
+import Database.DeadLetterStore;
+import Database.MeasurementBatchWriter;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Timestamp;
-import java.time.Instant;
 import java.util.ArrayList;
-
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
 
 public class Logic {
 
+    // Tamaño máximo de página que se sirve en una sola respuesta
+    public static final int MAX_PAGE_SIZE = Integer.getInteger("ubicomp.page.max", 1000);
+
+    // Filas que trae el driver por viaje al volcar un histórico en streaming
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("ubicomp.stream.fetchSize", 1000);
+
     /**
-     * Obtiene todos los registros de la tabla "informacion" y los mapea a
-     * objetos Measurement.
+     * Limita el tamaño de página pedido por el cliente a [1, MAX_PAGE_SIZE].
+     */
+    public static int clampPageSize(Integer requested) {
+        if (requested == null || requested <= 0) return MAX_PAGE_SIZE;
+        return Math.min(requested, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Primera página (MAX_PAGE_SIZE filas) de la tabla "informacion", de la
+     * más reciente a la más antigua. Para recorrer el resto usar getDataPage.
      */
     public static ArrayList<Measurement> getDataFromDB() {
-        ArrayList<Measurement> values = new ArrayList<>();
+        return getDataPage(null, MAX_PAGE_SIZE).getItems();
+    }
 
+    /**
+     * Página de la tabla "informacion" ordenada por (timestamp, dispositivo)
+     * descendente. Con cursor se buscan las filas anteriores a él (seek) en
+     * lugar de usar OFFSET, así el coste no depende de la profundidad.
+     */
+    public static MeasurementPage getDataPage(PageCursor cursor, int limit) {
         ConectionDDBB conector = new ConectionDDBB();
         Connection con = null;
         try {
-            con = conector.obtainConnection(true);
-            Log.log.info("Database Connected");
-
-            PreparedStatement ps = ConectionDDBB.GetDataBD(con);
-            Log.log.info("Query => " + ps.toString());
-            ResultSet rs = ps.executeQuery();
-
-            while (rs.next()) {
-                Measurement m = new Measurement();
-
-                // Campos directos de la tabla "informacion"
-                m.setTimestamp(rs.getTimestamp("timestamp"));
-                m.setCurrentState(rs.getString("current_state"));
-                m.setCyclePositionSeconds(getNullableInt(rs, "cycle_position_seconds"));
-                m.setTimeRemainingSeconds(getNullableInt(rs, "time_remaining_seconds"));
-                m.setCycleDurationSeconds(getNullableInt(rs, "cycle_duration_seconds"));
-                m.setTrafficLightType(rs.getString("traffic_light_type"));
-                m.setCirculationDirection(rs.getString("circulation_direction"));
-
-                // Flags CHAR(1) -> Boolean
-                m.setPedestrianWaiting(charToBoolean(rs.getString("pedestrian_waiting")));
-                m.setPedestrianButtonPressed(charToBoolean(rs.getString("pedestrian_button_pressed")));
-                m.setMalfunctionDetected(charToBoolean(rs.getString("malfunction_detected")));
-                m.setCycleCount(getNullableInt(rs, "cycle_count"));
-                m.setStateChanged(charToBoolean(rs.getString("state_changed")));
-                m.setLastStateChange(rs.getString("last_state_change"));
-                m.setDispositivoSensorId(getNullableInt(rs, "dispositivo_sensor_id"));
-
-                values.add(m);
+            con = conector.obtainReadConnection();
+            try (PreparedStatement ps = cursor == null
+                    ? ConectionDDBB.GetDataBD(con) : ConectionDDBB.GetDataAfterBD(con)) {
+                int idx = 1;
+                if (cursor != null) {
+                    idx = bindCursor(ps, idx, cursor);
+                }
+                ps.setInt(idx, limit + 1);
+                return readPage(ps, limit);
             }
         } catch (SQLException e) {
-            Log.log.error("Error SQL en getDataFromDB: " + e);
-            values = new ArrayList<>();
+            Log.log.error("Error SQL en getDataPage: " + e);
+            RequestDeadline.throwIfCancelled();
         } catch (NullPointerException e) {
-            Log.log.error("NullPointer en getDataFromDB: " + e);
-            values = new ArrayList<>();
+            Log.log.error("NullPointer en getDataPage: " + e);
+            RequestDeadline.throwIfCancelled();
         } catch (Exception e) {
-            Log.log.error("Error genérico en getDataFromDB: " + e);
-            values = new ArrayList<>();
+            Log.log.error("Error genérico en getDataPage: " + e);
+            RequestDeadline.throwIfCancelled();
         } finally {
             conector.closeConnection(con);
         }
-
-        return values;
+        return MeasurementPage.empty();
     }
 
     /**
@@ -81,92 +84,96 @@ public class Logic {
         return new ArrayList<>();
     }
 
+    // Registro de telemetría reutilizado por cada hilo de ingesta
+    private static final ThreadLocal<Telemetry> TELEMETRY = ThreadLocal.withInitial(Telemetry::new);
+
+    public static void insertFromMqtt(byte[] payload) {
+        insertFromMqtt(null, payload);
+    }
+
     /**
-     * Inserta en la tabla "informacion" los datos recibidos en formato JSON
-     * desde MQTT (payload publicado por el ESP32).
+     * Decodifica el payload MQTT en streaming, actualiza el estado actual del
+     * semáforo y entrega la medida al escritor por lotes, que la inserta en el
+     * siguiente volcado. Los mensajes que no superan la validación van a la
+     * cuarentena (DeadLetterStore) con el motivo.
      */
-    public static void insertFromMqttJson(String payload) {
-        ConectionDDBB conector = new ConectionDDBB();
-        Connection con = null;
-
-        try {
-            con = conector.obtainConnection(true);
-            Log.logdb.info("Database Connected (insertFromMqttJson)");
-
-            JsonObject root = JsonParser.parseString(payload).getAsJsonObject();
-
-            // --- datos del JSON ---
-            String sensorIdStr = root.get("sensor_id").getAsString();      // "1"
-       
-
-            String timestampStr = root.get("timestamp").getAsString();     // "2025-11-27T11:22:33Z"
-            Instant instant = Instant.parse(timestampStr);
-            Timestamp ts = Timestamp.from(instant);
-
-            JsonObject data = root.getAsJsonObject("data");
-
-            String currentState         = data.get("current_state").getAsString();
-            int cyclePosSec             = data.get("cycle_position_seconds").getAsInt();
-            int timeRemSec              = data.get("time_remaining_seconds").getAsInt();
-            int cycleDurSec             = data.get("cycle_duration_seconds").getAsInt();
-            String trafficLightType     = data.get("traffic_light_type").getAsString();
-            String circulationDirection = data.get("circulation_direction").getAsString();
-            boolean pedWaiting          = data.get("pedestrian_waiting").getAsBoolean();
-            boolean pedButton           = data.get("pedestrian_button_pressed").getAsBoolean();
-            boolean malfunction         = data.get("malfunction_detected").getAsBoolean();
-            int cycleCount              = data.get("cycle_count").getAsInt();
-            boolean stateChanged        = data.get("state_changed").getAsBoolean();
-            String lastStateChangeStr   = data.get("last_state_change").getAsString(); 
-
-            // --- mapeos a tipos de la tabla ---
-            // CHAR(1) lo guardamos como '1' (true) o '0' (false)
-            String pedWaitingChar   = pedWaiting   ? "1" : "0";
-            String pedButtonChar    = pedButton    ? "1" : "0";
-            String malfunctionChar  = malfunction  ? "1" : "0";
-            String stateChangedChar = stateChanged ? "1" : "0";
-
-            // last_state_change en tu tabla es CHAR(1); guardamos simplemente '1' si tenemos fecha
-            String lastStateChangeChar = (lastStateChangeStr != null && !lastStateChangeStr.isEmpty()) ? "1" : "0";
-
-            // dispositivo_sensor_id: suponemos que sensor_id del JSON es un número tipo "1"
-            int dispositivoSensorId = Integer.parseInt(sensorIdStr);
-
-            try {
-                Database.DeviceDAO.ensureDeviceExists(con, dispositivoSensorId);
-            } catch (SQLException e) {
-                // Si falla la creación, lo registramos pero seguimos intentando insertar la medida
-                Log.logdb.error("Error ensuring device " + dispositivoSensorId + " exists in `dispositivo`", e);
+    public static void insertFromMqtt(String topic, byte[] payload) {
+        Telemetry t = TELEMETRY.get();
+        DecodeResult result = ingest(payload, t, null);
+        if (result != DecodeResult.OK) {
+            String detail = t.errorPath;
+            if ((t.seen & Telemetry.SEEN_SENSOR_ID) != 0) {
+                detail = "sensor_id=" + t.sensorId + (detail != null ? " " + detail : "");
             }
+            Log.logdb.debug("Telemetry from " + topic + " quarantined: " + result + " " + detail);
+            DeadLetterStore.getInstance().submit(topic, payload, result, detail);
+        }
+    }
 
-            // === Inserción en `informacion` como hasta ahora ===
-            PreparedStatement ps = ConectionDDBB.SetDataBD(con);
-            int idx = 1;
-            ps.setTimestamp(idx++, ts);
-            ps.setString(idx++, currentState);
-            ps.setInt(idx++, cyclePosSec);
-            ps.setInt(idx++, timeRemSec);
-            ps.setInt(idx++, cycleDurSec);
-            ps.setString(idx++, trafficLightType);
-            ps.setString(idx++, circulationDirection);
-            ps.setString(idx++, pedWaitingChar);
-            ps.setString(idx++, pedButtonChar);
-            ps.setString(idx++, malfunctionChar);
-            ps.setInt(idx++, cycleCount);
-            ps.setString(idx++, stateChangedChar);
-            ps.setString(idx++, lastStateChangeChar);
-            ps.setInt(idx++, dispositivoSensorId);
-
-            Log.logdb.info("Query => " + ps.toString());
-            ps.executeUpdate();
-
+    /**
+     * Decodifica y, si es válido, procesa el mensaje. No lanza excepciones.
+     *
+     * @param replayed null en la ingesta normal; en el reproceso de la
+     *                 cuarentena recibe la medida, que se guarda siempre (sin
+     *                 filtros) y la escribe quien llama
+     */
+    private static DecodeResult ingest(byte[] payload, Telemetry t, List<Measurement> replayed) {
+        DecodeResult result = TelemetryDecoder.decode(payload, t);
+        if (result != DecodeResult.OK) return result;
+        // Reentregas QoS 1 tras una reconexión: se descartan sin tocar nada más
+        boolean duplicate = DuplicateFilter.getInstance().isDuplicate(t.sensorId, t.timestampMillis, t.cycleCount);
+        if (duplicate && replayed == null) return result;
+        Measurement m = t.toMeasurement();
+        Measurement previous = null;
+        if (!duplicate) {
+            previous = LatestStateCache.getInstance().update(m);
+            CommandTracker.getInstance().onMeasurement(previous, m);
+            RollupAggregator.getInstance().onMeasurement(previous, m);
+            TransitionTracker.getInstance().onMeasurement(m);
+        }
+        if (replayed != null) {
+            replayed.add(m);
+        } else if (ChangeOnlyFilter.getInstance().shouldPersist(previous, m)) {
+            MeasurementBatchWriter.getInstance().submit(m);
+        }
+        return result;
+    }
 
-        } catch (Exception e) {
-            Log.logdb.error("Error inserting from MQTT JSON", e);
-        } finally {
-            conector.closeConnection(con);
+    /**
+     * Reprocesa mensajes de la cuarentena: los que ahora se decodifican bien
+     * se insertan en el acto y se marcan como reprocesados solo si la fila ha
+     * quedado guardada; el resto se queda como estaba.
+     *
+     * @param ids ids concretos, o vacío para los más antiguos pendientes
+     */
+    public static Map<String, Object> replayDeadLetters(List<Long> ids, int limit) throws SQLException {
+        DeadLetterStore store = DeadLetterStore.getInstance();
+        List<DeadLetterStore.DeadLetter> letters = store.pending(ids, limit);
+        Telemetry t = new Telemetry();
+        List<Long> decoded = new ArrayList<>();
+        List<Measurement> rows = new ArrayList<>();
+        Map<String, Object> failed = new LinkedHashMap<>();
+        for (DeadLetterStore.DeadLetter d : letters) {
+            DecodeResult result = ingest(d.payload, t, rows);
+            if (result == DecodeResult.OK) {
+                decoded.add(d.id);
+            } else {
+                failed.put(String.valueOf(d.id), result.name());
+            }
+        }
+        boolean[] written = MeasurementBatchWriter.getInstance().writeNow(rows);
+        List<Long> replayed = new ArrayList<>();
+        for (int i = 0; i < decoded.size(); i++) {
+            if (written[i]) replayed.add(decoded.get(i));
+            else failed.put(String.valueOf(decoded.get(i)), "NOT_STORED");
         }
+        store.markReplayed(replayed);
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("requested", letters.size());
+        summary.put("replayed", replayed);
+        summary.put("failed", failed);
+        return summary;
     }
-    
 
     // ===================== HELPERS PRIVADOS (para no liarla) =====================
 
@@ -239,151 +246,364 @@ public class Logic {
         // True si es '1', 'Y', 'T', 'S'...
         return c.equals("1") || c.equals("Y") || c.equals("T") || c.equals("S");
     }
-    // ===================== NUEVOS: calles y dispositivos =====================
 
-    public static ArrayList<String> getStreetsFromDB() {
-        ArrayList<String> streets = new ArrayList<>();
+    // ===================== FILTRADO: calle, dispositivo y fechas =====================
+
+    public static MeasurementPage getDataFromDBFilteredPage(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            String endParam,
+            PageCursor cursor,
+            int limit) {
+        return getDataFromDBFilteredPage(streetId, deviceParam, startParam, endParam, false, cursor, limit);
+    }
+
+    /**
+     * Página del histórico filtrado por calle, dispositivo y fechas, ordenado
+     * por (timestamp, dispositivo) descendente. La página siguiente se pide
+     * con el nextCursor devuelto, que se aplica como predicado de búsqueda.
+     *
+     * Con fill=true y fecha de inicio se incluye además, por dispositivo, la
+     * última fila anterior al inicio (ver filteredQuery).
+     *
+     * Las páginas se sirven de QueryResultCache mientras no se guarden filas
+     * que puedan aparecer en ellas.
+     */
+    public static MeasurementPage getDataFromDBFilteredPage(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            String endParam,
+            boolean fill,
+            PageCursor cursor,
+            int limit) {
+
+        try {
+            QueryResultCache cache = QueryResultCache.getInstance();
+            if (!cache.isEnabled()) {
+                return loadFilteredPage(streetId, deviceParam, startParam, endParam, fill, cursor, limit);
+            }
+
+            // Clave y ámbito con los filtros normalizados
+            String key = filteredPageKey(streetId, deviceParam, startParam, endParam, fill, cursor, limit);
+            String street = streetId == null || streetId.isBlank() ? null : streetId;
+            Integer device = isDeviceFilter(deviceParam) ? Integer.valueOf(deviceParam.trim()) : null;
+            boolean hasStart = startParam != null && !startParam.isBlank();
+            boolean hasEnd = endParam != null && !endParam.isBlank();
+            long from = hasStart && !fill ? parseTimestampParam(startParam).getTime() : Long.MIN_VALUE;
+            long to = hasEnd ? parseTimestampParam(endParam).getTime() : Long.MAX_VALUE;
+            // Las páginas con cursor solo contienen filas hasta la posición del cursor
+            if (cursor != null) to = Math.min(to, cursor.getTimestampMillis());
+
+            MeasurementPage cached = cache.get(key);
+            if (cached != null) return cached;
+
+            long epoch = cache.epoch();
+            MeasurementPage page = loadFilteredPage(streetId, deviceParam, startParam, endParam, fill, cursor, limit);
+            cache.put(key, new QueryResultCache.Scope(device, street, from, to), page, epoch);
+            return page;
+
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            Log.log.error("Error en getDataFromDBFilteredPage(streetId,...): " + e, e);
+            // Consulta cancelada por el plazo de la petición: no es una página vacía
+            RequestDeadline.throwIfCancelled();
+        }
+
+        return MeasurementPage.empty();
+    }
+
+    /**
+     * Clave de una página del histórico filtrado con los filtros normalizados
+     * (fechas en ms, "all" como sin dispositivo): dos peticiones con la misma
+     * clave devuelven la misma página.
+     *
+     * @throws IllegalArgumentException si el dispositivo o las fechas no son válidos
+     */
+    public static String filteredPageKey(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            String endParam,
+            boolean fill,
+            PageCursor cursor,
+            int limit) {
+        boolean hasStart = startParam != null && !startParam.isBlank();
+        boolean hasEnd = endParam != null && !endParam.isBlank();
+        return (streetId == null || streetId.isBlank() ? "" : streetId)
+                + '|' + (isDeviceFilter(deviceParam) ? Integer.valueOf(deviceParam.trim()).toString() : "")
+                + '|' + (hasStart ? parseTimestampParam(startParam).getTime() : "")
+                + '|' + (hasEnd ? parseTimestampParam(endParam).getTime() : "")
+                + '|' + (fill && hasStart) + '|' + (cursor == null ? "" : cursor.encode()) + '|' + limit;
+    }
+
+    private static MeasurementPage loadFilteredPage(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            String endParam,
+            boolean fill,
+            PageCursor cursor,
+            int limit) throws SQLException {
+
         ConectionDDBB conector = new ConectionDDBB();
         Connection con = null;
 
         try {
-            con = conector.obtainConnection(true);
-            String sql = "SELECT street_id FROM calle ORDER BY street_id";
-            PreparedStatement ps = ConectionDDBB.getStatement(con, sql);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) streets.add(rs.getString("street_id"));
-        } catch (Exception e) {
-            Log.log.error("Error en getStreetsFromDB: " + e, e);
-            streets = new ArrayList<>();
+            con = conector.obtainReadConnection();
+            if (con == null) throw new SQLException("SQL connection is null");
+
+            ArrayList<Object> params = new ArrayList<>();
+            StringBuilder sql = filteredQuery(streetId, deviceParam, startParam, endParam, fill, params);
+
+            // Posición de la página (seek sobre el orden de la consulta)
+            if (cursor != null) {
+                sql.append(" AND (i.timestamp < ? OR (i.timestamp = ? AND i.dispositivo_sensor_id < ?))");
+            }
+
+            sql.append(" ORDER BY i.timestamp DESC, i.dispositivo_sensor_id DESC LIMIT ?");
+
+            Log.log.debug("Filtered Query => " + sql);
+            try (PreparedStatement ps = ConectionDDBB.getStatement(con, sql.toString())) {
+                int idx = bindParams(ps, params);
+                if (cursor != null) {
+                    idx = bindCursor(ps, idx, cursor);
+                }
+                ps.setInt(idx, limit + 1);
+
+                return readPage(ps, limit);
+            }
+
         } finally {
             conector.closeConnection(con);
         }
-        return streets;
     }
 
-    public static ArrayList<Integer> getDevicesByStreetFromDB(String streetId) {
-        ArrayList<Integer> devices = new ArrayList<>();
+    /**
+     * Vuelca el histórico filtrado completo, sin paginar, fila a fila sobre
+     * {@code sink} en el mismo orden que las páginas. El ResultSet se lee con
+     * fetch size positivo, así el driver trae las filas por tramos en lugar de
+     * cargar todo el resultado en memoria.
+     *
+     * @return número de filas escritas
+     */
+    public static long streamDataFromDBFiltered(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            String endParam,
+            boolean fill,
+            MeasurementSink sink) throws SQLException, IOException {
+
         ConectionDDBB conector = new ConectionDDBB();
         Connection con = null;
+        long rows = 0;
 
         try {
-            con = conector.obtainConnection(true);
-            String sql = "SELECT sensor_id FROM dispositivo WHERE calle_street_id = ? ORDER BY sensor_id";
-            PreparedStatement ps = ConectionDDBB.getStatement(con, sql);
-            ps.setString(1, streetId);
-            ResultSet rs = ps.executeQuery();
-            while (rs.next()) devices.add(rs.getInt("sensor_id"));
-        } catch (Exception e) {
-            Log.log.error("Error en getDevicesByStreetFromDB: " + e, e);
-            devices = new ArrayList<>();
+            con = conector.obtainReadConnection();
+            if (con == null) throw new SQLException("SQL connection is null");
+
+            ArrayList<Object> params = new ArrayList<>();
+            StringBuilder sql = filteredQuery(streetId, deviceParam, startParam, endParam, fill, params);
+            sql.append(" ORDER BY i.timestamp DESC, i.dispositivo_sensor_id DESC");
+            Log.log.debug("Streaming Query => " + sql);
+
+            try (PreparedStatement ps = con.prepareStatement(sql.toString(),
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                RequestDeadline.apply(ps);
+                ps.setFetchSize(STREAM_FETCH_SIZE);
+                bindParams(ps, params);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        sink.accept(mapMeasurement(rs));
+                        rows++;
+                    }
+                }
+            }
+            return rows;
+
         } finally {
+            Log.log.info("Streamed " + rows + " rows");
             conector.closeConnection(con);
         }
-        return devices;
     }
 
-    // ===================== FILTRADO: ahora con streetId =====================
-
-    // Compatibilidad: el viejo método sigue existiendo
-    public static ArrayList<Measurement> getDataFromDBFiltered(
+    /**
+     * Consulta base del histórico filtrado (sin orden ni límite). Los valores
+     * a enlazar se añaden a {@code params} en el orden de los '?'.
+     *
+     * Con fill=true y fecha de inicio, la consulta es la unión del intervalo
+     * con la fila ancla de cada dispositivo: la última anterior al inicio, que
+     * da el estado vigente al empezar el intervalo (en modo "solo cambios" no
+     * tiene por qué haber una fila justo en el inicio). La unión se expone con
+     * el alias i para que el cursor y el ORDER BY se apliquen igual.
+     */
+    private static StringBuilder filteredQuery(
+            String streetId,
             String deviceParam,
             String startParam,
-            String endParam) {
-        return getDataFromDBFiltered(null, deviceParam, startParam, endParam);
+            String endParam,
+            boolean fill,
+            ArrayList<Object> params) {
+
+        if (!fill || startParam == null || startParam.isBlank()) {
+            return rangeQuery(streetId, deviceParam, startParam, endParam, params);
+        }
+        StringBuilder sql = new StringBuilder("SELECT i.* FROM (");
+        sql.append(rangeQuery(streetId, deviceParam, startParam, endParam, params));
+        sql.append(" UNION ALL ");
+        sql.append(anchorQuery(streetId, deviceParam, startParam, params));
+        sql.append(") i WHERE 1=1");
+        return sql;
     }
 
-    public static ArrayList<Measurement> getDataFromDBFiltered(
+    private static StringBuilder rangeQuery(
             String streetId,
             String deviceParam,
             String startParam,
-            String endParam) {
-
-        ArrayList<Measurement> values = new ArrayList<>();
-        ConectionDDBB conector = new ConectionDDBB();
-        Connection con = null;
+            String endParam,
+            ArrayList<Object> params) {
+
+        boolean byStreet = streetId != null && !streetId.isBlank();
+        StringBuilder sql = new StringBuilder("SELECT i.* FROM informacion i ");
+        // Solo se cruza con dispositivo cuando se filtra por calle
+        if (byStreet) {
+            sql.append("JOIN dispositivo d ON d.sensor_id = i.dispositivo_sensor_id ");
+        }
+        sql.append("WHERE 1=1");
 
-        try {
-            con = conector.obtainConnection(true);
-            Log.log.info("Database Connected (filtered street+device+dates)");
+        // Filtro por calle
+        if (byStreet) {
+            sql.append(" AND d.calle_street_id = ?");
+            params.add(streetId);
+        }
 
-            StringBuilder sql = new StringBuilder(
-                    "SELECT i.* " +
-                    "FROM informacion i " +
-                    "JOIN dispositivo d ON d.sensor_id = i.dispositivo_sensor_id " +
-                    "WHERE 1=1"
-            );
+        // Filtro por dispositivo
+        if (isDeviceFilter(deviceParam)) {
+            sql.append(" AND i.dispositivo_sensor_id = ?");
+            params.add(Integer.parseInt(deviceParam));
+        }
 
-            ArrayList<Object> params = new ArrayList<>();
+        // Filtro por fecha inicio
+        if (startParam != null && !startParam.isBlank()) {
+            sql.append(" AND i.timestamp >= ?");
+            params.add(parseTimestampParam(startParam));
+        }
 
-            // Filtro por calle
-            if (streetId != null && !streetId.isBlank()) {
-                sql.append(" AND d.calle_street_id = ?");
-                params.add(streetId);
-            }
+        // Filtro por fecha fin
+        if (endParam != null && !endParam.isBlank()) {
+            sql.append(" AND i.timestamp <= ?");
+            params.add(parseTimestampParam(endParam));
+        }
+        return sql;
+    }
 
-            // Filtro por dispositivo
-            if (deviceParam != null && !deviceParam.isBlank()
-                    && !"all".equalsIgnoreCase(deviceParam)) {
-                sql.append(" AND i.dispositivo_sensor_id = ?");
-                params.add(Integer.parseInt(deviceParam));
-            }
+    /**
+     * Última fila anterior a startParam de cada dispositivo que cumple los
+     * filtros. El MAX por dispositivo se resuelve sobre la clave primaria
+     * (dispositivo_sensor_id, timestamp) sin recorrer el histórico.
+     */
+    private static StringBuilder anchorQuery(
+            String streetId,
+            String deviceParam,
+            String startParam,
+            ArrayList<Object> params) {
+
+        boolean byStreet = streetId != null && !streetId.isBlank();
+        StringBuilder sql = new StringBuilder("SELECT i.* FROM informacion i JOIN (")
+                .append("SELECT x.dispositivo_sensor_id, MAX(x.timestamp) AS ts FROM informacion x")
+                .append(" WHERE x.timestamp < ?");
+        params.add(parseTimestampParam(startParam));
+        if (isDeviceFilter(deviceParam)) {
+            sql.append(" AND x.dispositivo_sensor_id = ?");
+            params.add(Integer.parseInt(deviceParam));
+        }
+        sql.append(" GROUP BY x.dispositivo_sensor_id) a")
+           .append(" ON a.dispositivo_sensor_id = i.dispositivo_sensor_id AND a.ts = i.timestamp");
+        if (byStreet) {
+            sql.append(" JOIN dispositivo d ON d.sensor_id = i.dispositivo_sensor_id WHERE d.calle_street_id = ?");
+            params.add(streetId);
+        }
+        return sql;
+    }
 
-            // Filtro por fecha inicio
-            if (startParam != null && !startParam.isBlank()) {
-                sql.append(" AND i.timestamp >= ?");
-                params.add(parseTimestampParam(startParam));
-            }
+    private static boolean isDeviceFilter(String deviceParam) {
+        return deviceParam != null && !deviceParam.isBlank() && !"all".equalsIgnoreCase(deviceParam);
+    }
 
-            // Filtro por fecha fin
-            if (endParam != null && !endParam.isBlank()) {
-                sql.append(" AND i.timestamp <= ?");
-                params.add(parseTimestampParam(endParam));
+    /**
+     * @return siguiente índice libre tras enlazar params
+     */
+    private static int bindParams(PreparedStatement ps, ArrayList<Object> params) throws SQLException {
+        int idx = 1;
+        for (Object p : params) {
+            if (p instanceof Integer) {
+                ps.setInt(idx++, (Integer) p);
+            } else if (p instanceof String) {
+                ps.setString(idx++, (String) p);
+            } else if (p instanceof Timestamp) {
+                ps.setTimestamp(idx++, (Timestamp) p);
             }
+        }
+        return idx;
+    }
 
-            sql.append(" ORDER BY i.timestamp DESC");
-
-            PreparedStatement ps = ConectionDDBB.getStatement(con, sql.toString());
-            Log.log.info("Filtered Query => " + sql);
+    // ===================== Paginación =====================
 
-            int idx = 1;
-            for (Object p : params) {
-                if (p instanceof Integer) {
-                    ps.setInt(idx++, (Integer) p);
-                } else if (p instanceof String) {
-                    ps.setString(idx++, (String) p);
-                } else if (p instanceof Timestamp) {
-                    ps.setTimestamp(idx++, (Timestamp) p);
-                }
-            }
+    private static int bindCursor(PreparedStatement ps, int idx, PageCursor cursor) throws SQLException {
+        Timestamp ts = cursor.getTimestamp();
+        ps.setTimestamp(idx++, ts);
+        ps.setTimestamp(idx++, ts);
+        ps.setInt(idx++, cursor.getDeviceId());
+        return idx;
+    }
 
-            ResultSet rs = ps.executeQuery();
+    /**
+     * Lee hasta limit filas; la consulta pide limit + 1 para saber si hay
+     * página siguiente sin otra consulta.
+     */
+    private static MeasurementPage readPage(PreparedStatement ps, int limit) throws SQLException {
+        ArrayList<Measurement> values = new ArrayList<>();
+        boolean more = false;
+        try (ResultSet rs = ps.executeQuery()) {
             while (rs.next()) {
-                Measurement m = new Measurement();
-                m.setTimestamp(rs.getTimestamp("timestamp"));
-                m.setCurrentState(rs.getString("current_state"));
-                m.setCyclePositionSeconds(getNullableInt(rs, "cycle_position_seconds"));
-                m.setTimeRemainingSeconds(getNullableInt(rs, "time_remaining_seconds"));
-                m.setCycleDurationSeconds(getNullableInt(rs, "cycle_duration_seconds"));
-                m.setTrafficLightType(rs.getString("traffic_light_type"));
-                m.setCirculationDirection(rs.getString("circulation_direction"));
-                m.setPedestrianWaiting(charToBoolean(rs.getString("pedestrian_waiting")));
-                m.setPedestrianButtonPressed(charToBoolean(rs.getString("pedestrian_button_pressed")));
-                m.setMalfunctionDetected(charToBoolean(rs.getString("malfunction_detected")));
-                m.setCycleCount(getNullableInt(rs, "cycle_count"));
-                m.setStateChanged(charToBoolean(rs.getString("state_changed")));
-                m.setLastStateChange(rs.getString("last_state_change"));
-                m.setDispositivoSensorId(getNullableInt(rs, "dispositivo_sensor_id"));
-                values.add(m);
+                if (values.size() == limit) {
+                    more = true;
+                    break;
+                }
+                values.add(mapMeasurement(rs));
             }
-
-        } catch (Exception e) {
-            Log.log.error("Error en getDataFromDBFiltered(streetId,...): " + e, e);
-            values = new ArrayList<>();
-        } finally {
-            conector.closeConnection(con);
         }
+        String next = more ? PageCursor.after(values.get(values.size() - 1)).encode() : null;
+        return new MeasurementPage(values, next);
+    }
 
-        return values;
+    /**
+     * Mapea la fila actual de "informacion" a un Measurement.
+     */
+    static Measurement mapMeasurement(ResultSet rs) throws SQLException {
+        Measurement m = new Measurement();
+
+        // Campos directos de la tabla "informacion"
+        m.setTimestamp(rs.getTimestamp("timestamp"));
+        m.setCurrentState(rs.getString("current_state"));
+        m.setCyclePositionSeconds(getNullableInt(rs, "cycle_position_seconds"));
+        m.setTimeRemainingSeconds(getNullableInt(rs, "time_remaining_seconds"));
+        m.setCycleDurationSeconds(getNullableInt(rs, "cycle_duration_seconds"));
+        m.setTrafficLightType(rs.getString("traffic_light_type"));
+        m.setCirculationDirection(rs.getString("circulation_direction"));
+
+        // Flags CHAR(1) -> Boolean
+        m.setPedestrianWaiting(charToBoolean(rs.getString("pedestrian_waiting")));
+        m.setPedestrianButtonPressed(charToBoolean(rs.getString("pedestrian_button_pressed")));
+        m.setMalfunctionDetected(charToBoolean(rs.getString("malfunction_detected")));
+        m.setCycleCount(getNullableInt(rs, "cycle_count"));
+        m.setStateChanged(charToBoolean(rs.getString("state_changed")));
+        m.setLastStateChange(rs.getString("last_state_change"));
+        m.setDispositivoSensorId(getNullableInt(rs, "dispositivo_sensor_id"));
+        return m;
     }
 
     /**
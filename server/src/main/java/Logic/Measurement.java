@@ -5,7 +5,7 @@ import java.sql.Timestamp;
 public class Measurement {
 
     // Campos que reflejan la tabla "informacion"
-    private Timestamp timestamp;              // PK
+    private Timestamp timestamp;              // PK (con dispositivoSensorId)
     private String currentState;
     private Integer cyclePositionSeconds;
     private Integer timeRemainingSeconds;
@@ -20,6 +20,9 @@ public class Measurement {
     private String lastStateChange;           
     private Integer dispositivoSensorId;
 
+    // Calle indicada por el propio mensaje MQTT; no es columna de "informacion" y no se serializa
+    private transient String streetId;
+
     // Constructor por defecto
     public Measurement() {
         this.timestamp = null;
@@ -184,4 +187,12 @@ public class Measurement {
     public void setDispositivoSensorId(Integer dispositivoSensorId) {
         this.dispositivoSensorId = dispositivoSensorId;
     }
+
+    public String getStreetId() {
+        return streetId;
+    }
+
+    public void setStreetId(String streetId) {
+        this.streetId = streetId;
+    }
 }
@@ -0,0 +1,30 @@
+package logic;
+
+import java.util.ArrayList;
+
+/**
+ * Página de mediciones devuelta por las consultas paginadas de Logic.
+ * nextCursor es null cuando no hay más filas.
+ */
+public class MeasurementPage {
+
+    private final ArrayList<Measurement> items;
+    private final String nextCursor;
+
+    public MeasurementPage(ArrayList<Measurement> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public static MeasurementPage empty() {
+        return new MeasurementPage(new ArrayList<>(), null);
+    }
+
+    public ArrayList<Measurement> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+}
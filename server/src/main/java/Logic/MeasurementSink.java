@@ -0,0 +1,13 @@
+package logic;
+
+import java.io.IOException;
+
+/**
+ * Destino fila a fila de Logic.streamDataFromDBFiltered (p. ej. un JsonWriter
+ * sobre la respuesta HTTP). Un IOException corta la lectura de la consulta.
+ */
+@FunctionalInterface
+public interface MeasurementSink {
+
+    void accept(Measurement m) throws IOException;
+}
@@ -0,0 +1,59 @@
+package logic;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Base64;
+
+/**
+ * Cursor opaco de paginación por clave (keyset) sobre "informacion".
+ *
+ * Guarda la última fila devuelta (timestamp en ms + dispositivo); la
+ * siguiente página son las filas estrictamente anteriores en el orden
+ * (timestamp DESC, dispositivo_sensor_id DESC). Se serializa como base64url.
+ */
+public class PageCursor {
+
+    private final long timestampMillis;
+    private final int deviceId;
+
+    public PageCursor(long timestampMillis, int deviceId) {
+        this.timestampMillis = timestampMillis;
+        this.deviceId = deviceId;
+    }
+
+    public static PageCursor after(Measurement last) {
+        return new PageCursor(last.getTimestamp().getTime(), last.getDispositivoSensorId());
+    }
+
+    public Timestamp getTimestamp() {
+        return new Timestamp(timestampMillis);
+    }
+
+    public long getTimestampMillis() {
+        return timestampMillis;
+    }
+
+    public int getDeviceId() {
+        return deviceId;
+    }
+
+    public String encode() {
+        String raw = timestampMillis + ":" + deviceId;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * @return el cursor, o null si no se ha indicado
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public static PageCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) return null;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.US_ASCII);
+            int sep = raw.indexOf(':');
+            return new PageCursor(Long.parseLong(raw.substring(0, sep)), Integer.parseInt(raw.substring(sep + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
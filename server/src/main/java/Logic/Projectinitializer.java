@@ -1,11 +1,22 @@
 package logic;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
 
+import Database.DeadLetterStore;
+import Database.DeviceDAO;
+import Database.MeasurementBatchWriter;
+import Database.PartitionManager;
+import Database.ReplicaMonitor;
+import Database.WriteAheadSpool;
+import mqtt.IngestionDispatcher;
 import mqtt.MQTTBroker;
 import mqtt.MQTTPublisher;
+import mqtt.MQTTPublisherPool;
 import mqtt.MQTTSuscriber;
 
 /**
@@ -16,9 +27,20 @@ import mqtt.MQTTSuscriber;
 @WebListener
 public class Projectinitializer implements ServletContextListener {
     private MQTTSuscriber suscriber;
+    // Tareas periódicas de mantenimiento (particiones, etc.)
+    private ScheduledExecutorService maintenance;
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
+        RequestExecutor.getInstance().stop();
+        IngestionDispatcher.getInstance().stop();
+        MQTTPublisherPool.getInstance().stop();
+        MeasurementBatchWriter.getInstance().stop();
+        DeadLetterStore.getInstance().stop();
+        if (maintenance != null) maintenance.shutdownNow();
+        RollupAggregator.getInstance().flush();
+        TransitionTracker.getInstance().flush();
+        WriteAheadSpool.getInstance().close();
     }
 
     @Override
@@ -31,7 +53,24 @@ public class Projectinitializer implements ServletContextListener {
      * EN: Context event created during server launch
      */
     public void contextInitialized(ServletContextEvent sce) {
+        DeviceDAO.preloadRegistry();
+        LatestStateCache.getInstance().warm();
+        WriteAheadSpool.getInstance().open();
+        MeasurementBatchWriter.getInstance().start();
+        DeadLetterStore.getInstance().start();
+        IngestionDispatcher.getInstance().start();
+        RequestExecutor.getInstance().start();
+        maintenance = Executors.newSingleThreadScheduledExecutor(ThreadFactories.platform("maintenance"));
+        PartitionManager.getInstance().schedule(maintenance);
+        ReplicaMonitor.getInstance().schedule(maintenance);
+        StreetCatalog.getInstance().schedule(maintenance);
+        CommandTracker.getInstance().schedule(maintenance);
+        DeadLetterStore.getInstance().schedule(maintenance);
+        WriteAheadSpool.getInstance().schedule(maintenance);
+        RollupAggregator.getInstance().schedule(maintenance);
+        TransitionTracker.getInstance().schedule(maintenance);
         Log.log.info("-->Suscribe Topics<--");
+        MQTTPublisherPool.getInstance().start();
         MQTTBroker broker = new MQTTBroker();
         suscriber = new MQTTSuscriber(broker);
         suscriber.subscribeTopic("sensors/#");
@@ -0,0 +1,251 @@
+package logic;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caché de resultados de las páginas de GetDataFiltered.
+ *
+ * La clave es la tupla de filtros normalizada (calle, dispositivo, inicio y
+ * fin en ms, fill, cursor y tamaño de página). Cada entrada guarda además su
+ * ámbito: el dispositivo o la calle filtrados y el intervalo de tiempo que
+ * puede contener (hasta el cursor, si lo hay). Cuando el escritor confirma
+ * filas nuevas (onStored) se borran solo las entradas cuyo ámbito incluye
+ * alguna de ellas; las páginas de intervalos cerrados sobreviven a la ingesta.
+ *
+ * Para no guardar un resultado leído antes de una escritura que lo invalida,
+ * put() comprueba las escrituras confirmadas desde que empezó la consulta
+ * (registro acotado de las últimas; si ya no alcanza, no se guarda).
+ *
+ * LRU acotada por número de entradas y por memoria estimada, con caducidad.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.cache.enabled     activar la caché (true)
+ *  - ubicomp.cache.maxEntries  entradas como máximo (256)
+ *  - ubicomp.cache.maxBytes    memoria estimada máxima (16 MB)
+ *  - ubicomp.cache.ttlMs       vida máxima de una entrada (60000)
+ */
+public class QueryResultCache {
+
+    private static final QueryResultCache INSTANCE = new QueryResultCache();
+
+    // Estimación del tamaño en memoria de un Measurement (objeto, Timestamp, cadenas)
+    private static final long BYTES_PER_ROW = 400;
+    private static final long BYTES_PER_ENTRY = 200;
+    // Escrituras recientes recordadas para validar los put()
+    private static final int RECENT_WRITES = 4096;
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("ubicomp.cache.enabled", "true"));
+    private final int maxEntries = Integer.getInteger("ubicomp.cache.maxEntries", 256);
+    private final long maxBytes = Long.getLong("ubicomp.cache.maxBytes", 16L * 1024 * 1024);
+    private final long ttlMillis = Long.getLong("ubicomp.cache.ttlMs", 60000L);
+
+    // Orden de acceso: el primero es el menos usado recientemente
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long bytes = 0;
+
+    // Escrituras confirmadas (protegido por this)
+    private long epoch = 0;
+    private final ArrayDeque<Write> recentWrites = new ArrayDeque<>();
+
+    // ---- métricas ----
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong rejectedPuts = new AtomicLong();
+
+    private QueryResultCache() {}
+
+    public static QueryResultCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Qué filas pueden aparecer en un resultado: dispositivo o calle (null =
+     * cualquiera) y marcas de tiempo en [fromMillis, toMillis].
+     */
+    public static final class Scope {
+        final Integer device;
+        final String street;
+        final long fromMillis;
+        final long toMillis;
+
+        public Scope(Integer device, String street, long fromMillis, long toMillis) {
+            this.device = device;
+            this.street = street;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+        }
+
+        boolean covers(int deviceId, String deviceStreet, long minTs, long maxTs) {
+            if (maxTs < fromMillis || minTs > toMillis) return false;
+            if (device != null && device != deviceId) return false;
+            // Calle desconocida: se invalida por si acaso
+            return street == null || deviceStreet == null || street.equals(deviceStreet);
+        }
+    }
+
+    private static final class Entry {
+        final MeasurementPage page;
+        final Scope scope;
+        final long expiresAt;
+        final long size;
+
+        Entry(MeasurementPage page, Scope scope, long expiresAt, long size) {
+            this.page = page;
+            this.scope = scope;
+            this.expiresAt = expiresAt;
+            this.size = size;
+        }
+    }
+
+    private static final class Write {
+        final long epoch;
+        final int device;
+        final String street;
+        final long minTs;
+        final long maxTs;
+
+        Write(long epoch, int device, String street, long minTs, long maxTs) {
+            this.epoch = epoch;
+            this.device = device;
+            this.street = street;
+            this.minTs = minTs;
+            this.maxTs = maxTs;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public synchronized MeasurementPage get(String key) {
+        Entry e = entries.get(key);
+        if (e == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (System.currentTimeMillis() >= e.expiresAt) {
+            remove(key, e);
+            expirations.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return e.page;
+    }
+
+    /**
+     * Marca de escrituras a tomar antes de lanzar la consulta que se pasará a put().
+     */
+    public synchronized long epoch() {
+        return epoch;
+    }
+
+    public synchronized void put(String key, Scope scope, MeasurementPage page, long startEpoch) {
+        if (!enabled) return;
+        // ¿Alguna escritura confirmada durante la consulta afecta a este resultado?
+        if (startEpoch != epoch) {
+            Write oldest = recentWrites.peekFirst();
+            if (oldest == null || oldest.epoch > startEpoch + 1) {
+                rejectedPuts.incrementAndGet();
+                return;
+            }
+            for (Iterator<Write> it = recentWrites.descendingIterator(); it.hasNext(); ) {
+                Write w = it.next();
+                if (w.epoch <= startEpoch) break;
+                if (scope.covers(w.device, w.street, w.minTs, w.maxTs)) {
+                    rejectedPuts.incrementAndGet();
+                    return;
+                }
+            }
+        }
+        long size = BYTES_PER_ENTRY + BYTES_PER_ROW * page.getItems().size();
+        if (size > maxBytes) return;
+        Entry old = entries.remove(key);
+        if (old != null) bytes -= old.size;
+        entries.put(key, new Entry(page, scope, System.currentTimeMillis() + ttlMillis, size));
+        bytes += size;
+        // Expulsión LRU hasta volver a los límites
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<String, Entry> lru = it.next();
+            bytes -= lru.getValue().size;
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * Filas confirmadas en `informacion`: invalida las entradas que podrían contenerlas.
+     */
+    public void onStored(List<Measurement> rows) {
+        if (!enabled || rows.isEmpty()) return;
+        // Resumen por dispositivo: [min, max] de las marcas de tiempo
+        Map<Integer, long[]> ranges = new HashMap<>();
+        Map<Integer, String> streets = new HashMap<>();
+        for (Measurement m : rows) {
+            if (m.getDispositivoSensorId() == null || m.getTimestamp() == null) continue;
+            long ts = m.getTimestamp().getTime();
+            long[] r = ranges.computeIfAbsent(m.getDispositivoSensorId(), k -> new long[] { ts, ts });
+            r[0] = Math.min(r[0], ts);
+            r[1] = Math.max(r[1], ts);
+            if (m.getStreetId() != null) streets.put(m.getDispositivoSensorId(), m.getStreetId());
+        }
+        // Las páginas filtran por la calle de `dispositivo`, no por la del mensaje
+        StreetCatalog.StreetResolver resolver = StreetCatalog.getInstance().cachedStreets();
+        for (Map.Entry<Integer, long[]> d : ranges.entrySet()) {
+            streets.put(d.getKey(), resolver.resolve(d.getKey(), streets.get(d.getKey())));
+        }
+
+        synchronized (this) {
+            epoch++;
+            for (Map.Entry<Integer, long[]> d : ranges.entrySet()) {
+                recentWrites.addLast(new Write(epoch, d.getKey(), streets.get(d.getKey()), d.getValue()[0], d.getValue()[1]));
+                if (recentWrites.size() > RECENT_WRITES) recentWrites.removeFirst();
+            }
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Entry e = it.next().getValue();
+                for (Map.Entry<Integer, long[]> d : ranges.entrySet()) {
+                    if (e.scope.covers(d.getKey(), streets.get(d.getKey()), d.getValue()[0], d.getValue()[1])) {
+                        bytes -= e.size;
+                        it.remove();
+                        invalidations.incrementAndGet();
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private void remove(String key, Entry e) {
+        entries.remove(key);
+        bytes -= e.size;
+    }
+
+    public synchronized Map<String, Object> stats() {
+        long h = hits.get();
+        long m = misses.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("entries", entries.size());
+        s.put("estimatedBytes", bytes);
+        s.put("maxBytes", maxBytes);
+        s.put("hits", h);
+        s.put("misses", m);
+        s.put("hitRatio", h + m == 0 ? 0 : Math.round(h * 10000.0 / (h + m)) / 10000.0);
+        s.put("invalidations", invalidations.get());
+        s.put("evictions", evictions.get());
+        s.put("expirations", expirations.get());
+        s.put("rejectedPuts", rejectedPuts.get());
+        return s;
+    }
+}
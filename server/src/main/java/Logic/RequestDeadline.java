@@ -0,0 +1,173 @@
+package logic;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Plazo de una petición HTTP y cancelación de su trabajo bloqueante.
+ *
+ * RequestExecutor lo asocia al hilo que atiende la petición (current()); así
+ * las consultas de Logic y ConectionDDBB lo encuentran sin pasarlo por
+ * parámetro. Cada sentencia que pasa por {@link #apply(Statement)} recibe como
+ * setQueryTimeout el tiempo que queda y se cancela con Statement.cancel() si
+ * la petición vence o el cliente se desconecta. Lo mismo para las esperas de
+ * {@link #await(CompletableFuture, long)}.
+ *
+ * Un trabajo cancelado termina con CancellationException, que los servlets
+ * responden con 503.
+ */
+public final class RequestDeadline {
+
+    public static final String TIMEOUT = "deadline exceeded";
+    public static final String DISCONNECTED = "client disconnected";
+
+    private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+    private volatile long deadlineNanos;
+    private final List<Runnable> onCancel = new ArrayList<>();
+    private volatile String cancelReason = null;
+
+    public RequestDeadline(long timeoutMillis) {
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    /** Plazo de la petición que se atiende en este hilo, o null fuera de RequestExecutor. */
+    public static RequestDeadline current() {
+        return CURRENT.get();
+    }
+
+    void bind() {
+        CURRENT.set(this);
+    }
+
+    void unbind() {
+        CURRENT.remove();
+    }
+
+    /**
+     * Alarga el plazo hasta el de {@code other} si este es posterior (trabajo
+     * compartido por varias peticiones, ver SingleFlight).
+     */
+    synchronized void extendTo(RequestDeadline other) {
+        if (other.deadlineNanos - deadlineNanos > 0) deadlineNanos = other.deadlineNanos;
+    }
+
+    public long remainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isCancelled() {
+        return cancelReason != null;
+    }
+
+    public String cancelReason() {
+        return cancelReason;
+    }
+
+    /**
+     * Marca la petición como cancelada y ejecuta los avisos registrados
+     * (Statement.cancel() de las consultas en curso, esperas pendientes).
+     */
+    public void cancel(String reason) {
+        List<Runnable> hooks;
+        synchronized (this) {
+            if (cancelReason != null) return;
+            cancelReason = reason;
+            hooks = new ArrayList<>(onCancel);
+            onCancel.clear();
+        }
+        for (Runnable hook : hooks) {
+            try {
+                hook.run();
+            } catch (RuntimeException e) {
+                Log.log.warn("Error cancelling request work: " + e);
+            }
+        }
+    }
+
+    /**
+     * Registra un aviso de cancelación; si ya está cancelada se ejecuta en el acto.
+     */
+    public void onCancel(Runnable hook) {
+        synchronized (this) {
+            if (cancelReason == null) {
+                onCancel.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    /**
+     * Limita la sentencia al tiempo que le queda a la petición del hilo actual
+     * (en segundos, redondeado hacia arriba) y la cancela si la petición se
+     * cancela antes. Sin petición asociada no hace nada.
+     *
+     * @throws SQLTimeoutException si la petición ya ha vencido o se ha cancelado
+     */
+    public static void apply(Statement st) throws SQLException {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline == null || st == null) return;
+        long remaining = deadline.remainingMillis();
+        if (remaining <= 0) deadline.cancel(TIMEOUT);
+        if (deadline.isCancelled()) {
+            throw new SQLTimeoutException("Request cancelled: " + deadline.cancelReason);
+        }
+        st.setQueryTimeout((int) Math.max(1, (remaining + 999) / 1000));
+        deadline.onCancel(() -> {
+            try {
+                // Las sentencias ya terminadas de la petición no se tocan
+                if (!st.isClosed()) st.cancel();
+            } catch (SQLException e) {
+                Log.logdb.warn("Error cancelling statement: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Para los bloques catch que tragan errores (p. ej. devolviendo una página
+     * vacía): si la petición del hilo actual se ha cancelado o ha vencido, el
+     * error se debe a eso y se propaga como CancellationException.
+     */
+    public static void throwIfCancelled() {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline == null) return;
+        if (deadline.remainingMillis() <= 0) deadline.cancel(TIMEOUT);
+        if (deadline.isCancelled()) throw new CancellationException(deadline.cancelReason);
+    }
+
+    /**
+     * Espera el resultado como mucho maxMillis y, sin pasar del plazo de la
+     * petición del hilo actual, despertando si se cancela.
+     *
+     * @throws TimeoutException      si vence maxMillis antes que la petición
+     * @throws CancellationException si la petición vence o se cancela
+     */
+    public static <V> V await(CompletableFuture<V> future, long maxMillis)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        RequestDeadline deadline = CURRENT.get();
+        if (deadline == null) return future.get(maxMillis, TimeUnit.MILLISECONDS);
+
+        CompletableFuture<V> view = future.copy();
+        deadline.onCancel(() -> view.cancel(false));
+        long remaining = deadline.remainingMillis();
+        try {
+            return view.get(Math.max(0, Math.min(maxMillis, remaining)), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (maxMillis < remaining) throw e;
+            deadline.cancel(TIMEOUT);
+            throw new CancellationException(TIMEOUT);
+        } catch (CancellationException e) {
+            // La cancelación propia lleva el motivo; si no, viene del propio future
+            throw deadline.isCancelled() ? new CancellationException(deadline.cancelReason) : e;
+        }
+    }
+}
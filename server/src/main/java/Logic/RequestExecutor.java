@@ -0,0 +1,156 @@
+package logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ejecuta el trabajo bloqueante de las peticiones HTTP asíncronas (JDBC,
+ * publicación MQTT) fuera de los hilos de Tomcat, en hilos virtuales si la JVM
+ * los soporta, con su RequestDeadline asociado al hilo.
+ *
+ * Al vencer el plazo, un temporizador cancela la petición (Statement.cancel()
+ * de sus consultas), de modo que una consulta lenta no retiene el hilo ni la
+ * conexión más allá de su presupuesto.
+ *
+ * Sin hilos virtuales (JVM anterior a Java 21) el pool de hilos de plataforma
+ * está acotado: como startAsync() libera los hilos de Tomcat, maxThreads ya no
+ * limita nada, así que lo que no cabe en maxWorkers + cola se rechaza (503).
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.http.deadlineMs        plazo de cada petición (10000)
+ *  - ubicomp.http.streamDeadlineMs  plazo de las exportaciones stream=true (300000)
+ *  - ubicomp.http.maxWorkers        hilos de plataforma como máximo, sin hilos virtuales (200)
+ *  - ubicomp.http.queue             peticiones en espera de hilo, sin hilos virtuales (100)
+ */
+public class RequestExecutor {
+
+    private static final RequestExecutor INSTANCE = new RequestExecutor();
+
+    private final long deadlineMillis = Long.getLong("ubicomp.http.deadlineMs", 10000L);
+    private final long streamDeadlineMillis = Long.getLong("ubicomp.http.streamDeadlineMs", 300000L);
+    private final int maxWorkers = Integer.getInteger("ubicomp.http.maxWorkers", 200);
+    private final int queueCapacity = Integer.getInteger("ubicomp.http.queue", 100);
+
+    private volatile ExecutorService workers;
+    private volatile ScheduledExecutorService timer;
+
+    // ---- métricas ----
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong disconnected = new AtomicLong();
+    private final AtomicInteger active = new AtomicInteger();
+    private final LatencyHistogram duration = new LatencyHistogram();
+
+    private RequestExecutor() {}
+
+    public static RequestExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (workers != null) return;
+        if (ThreadFactories.virtualThreadsSupported()) {
+            workers = Executors.newCachedThreadPool(ThreadFactories.virtualOrPlatform("http-worker"));
+        } else {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity), ThreadFactories.platform("http-worker"),
+                    new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            workers = pool;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(ThreadFactories.platform("http-deadline"));
+        Log.log.info("RequestExecutor started (deadlineMs=" + deadlineMillis + ", virtualThreads="
+                + ThreadFactories.virtualThreadsSupported() + ")");
+    }
+
+    public synchronized void stop() {
+        if (workers == null) return;
+        workers.shutdownNow();
+        timer.shutdownNow();
+        workers = null;
+        timer = null;
+    }
+
+    public boolean isRunning() {
+        return workers != null;
+    }
+
+    public long deadlineMillis() {
+        return deadlineMillis;
+    }
+
+    public long streamDeadlineMillis() {
+        return streamDeadlineMillis;
+    }
+
+    /**
+     * Lanza {@code work} en un hilo de trabajo con {@code deadline} asociado.
+     *
+     * @throws RejectedExecutionException si el ejecutor no está arrancado o
+     *         (sin hilos virtuales) no quedan hilos ni sitio en la cola
+     */
+    public void execute(RequestDeadline deadline, Runnable work) {
+        ExecutorService w = workers;
+        ScheduledExecutorService t = timer;
+        if (w == null || t == null) {
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("RequestExecutor not started");
+        }
+        try {
+            w.execute(() -> {
+                long t0 = System.nanoTime();
+                active.incrementAndGet();
+                ScheduledFuture<?> expiry = t.schedule(() -> cancel(deadline, RequestDeadline.TIMEOUT),
+                        Math.max(0, deadline.remainingMillis()), TimeUnit.MILLISECONDS);
+                deadline.bind();
+                try {
+                    work.run();
+                } finally {
+                    deadline.unbind();
+                    expiry.cancel(false);
+                    active.decrementAndGet();
+                    duration.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0));
+                }
+            });
+            submitted.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * Cancela la petición contando el motivo (vencimiento o desconexión).
+     */
+    public void cancel(RequestDeadline deadline, String reason) {
+        if (deadline.isCancelled()) return;
+        if (RequestDeadline.TIMEOUT.equals(reason)) timedOut.incrementAndGet();
+        else disconnected.incrementAndGet();
+        deadline.cancel(reason);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("running", workers != null);
+        s.put("virtualThreads", ThreadFactories.virtualThreadsSupported());
+        s.put("deadlineMs", deadlineMillis);
+        s.put("submitted", submitted.get());
+        s.put("active", active.get());
+        s.put("rejected", rejected.get());
+        s.put("timedOut", timedOut.get());
+        s.put("disconnected", disconnected.get());
+        s.put("duration", duration.snapshot());
+        return s;
+    }
+}
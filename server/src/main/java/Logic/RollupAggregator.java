@@ -0,0 +1,235 @@
+package logic;
+
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import Database.ConectionDDBB;
+import Database.RollupStore;
+import Database.RollupStore.Counters;
+import Database.RollupStore.Key;
+
+/**
+ * Agregados por minuto y por hora, por dispositivo y por calle, mantenidos en
+ * memoria desde la ingesta y volcados periódicamente como incrementos a
+ * `informacion_rollup` (ver RollupStore).
+ *
+ * Por cada medida se cuentan la muestra, los flancos de subida del botón de
+ * peatón, las muestras con avería y los cambios de estado; el tiempo desde la
+ * medida anterior del dispositivo se imputa al estado anterior, partido en los
+ * minutos que cruza. Los huecos mayores que maxGapSec (dispositivo caído) no cuentan.
+ *
+ * Las medidas siguen contando aunque el modo "solo cambios" no las guarde, y
+ * las historias anteriores se cargan con Database.RollupBackfill.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.rollup.enabled    mantener los agregados (true)
+ *  - ubicomp.rollup.flushSec   periodo de volcado a la base de datos (10)
+ *  - ubicomp.rollup.maxGapSec  hueco máximo imputable a un estado (120)
+ *  - ubicomp.rollup.maxKeys    cubos pendientes como máximo si la BD falla (200000)
+ */
+public class RollupAggregator {
+
+    private static final RollupAggregator INSTANCE = new RollupAggregator();
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("ubicomp.rollup.enabled", "true"));
+    private final long flushSec = Long.getLong("ubicomp.rollup.flushSec", 10L);
+    private final long maxGapMillis = Long.getLong("ubicomp.rollup.maxGapSec", 120L) * 1000L;
+    private final int maxKeys = Integer.getInteger("ubicomp.rollup.maxKeys", 200000);
+
+    // La ingesta toma el cerrojo de lectura (compartido); el volcado toma el de
+    // escritura solo para cambiar de mapa, así ningún incremento cae en el mapa
+    // que se está volcando
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private volatile ConcurrentHashMap<Key, Counters> pending = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong measurements = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong rowsUpserted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long lastFlushMs = 0;
+    private volatile String lastError = null;
+    private volatile boolean tableReady = false;
+
+    private RollupAggregator() {}
+
+    public static RollupAggregator getInstance() {
+        return INSTANCE;
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        if (!enabled) return;
+        // La tabla se crea ya, para que GetAggregates responda aunque aún no haya volcados
+        scheduler.execute(this::ensureTable);
+        scheduler.scheduleWithFixedDelay(this::flush, flushSec, flushSec, TimeUnit.SECONDS);
+        Log.logdb.info("RollupAggregator scheduled every " + flushSec + " s");
+    }
+
+    /**
+     * Acumula la medida en sus cuatro cubos (minuto/hora × dispositivo/calle).
+     *
+     * @param previous medida anterior del dispositivo (de LatestStateCache), o null
+     */
+    public void onMeasurement(Measurement previous, Measurement m) {
+        if (!enabled || m.getDispositivoSensorId() == null || m.getTimestamp() == null) return;
+        measurements.incrementAndGet();
+
+        Counters delta = new Counters();
+        delta.samples = 1;
+        if (Boolean.TRUE.equals(m.getMalfunctionDetected())) delta.malfunctionSamples = 1;
+
+        // Intervalo previo -> estado anterior, partido en los minutos que cruza
+        String intervalState = null;
+        long intervalFrom = 0;
+        long intervalTo = 0;
+        if (previous != null && previous.getTimestamp() != null
+                && previous.getTimestamp().before(m.getTimestamp())) {
+            if (Boolean.TRUE.equals(m.getPedestrianButtonPressed())
+                    && !Boolean.TRUE.equals(previous.getPedestrianButtonPressed())) {
+                delta.buttonPresses = 1;
+            }
+            if (previous.getCurrentState() != null && !previous.getCurrentState().equals(m.getCurrentState())) {
+                delta.stateChanges = 1;
+            }
+            long gap = m.getTimestamp().getTime() - previous.getTimestamp().getTime();
+            if (gap <= maxGapMillis) {
+                intervalState = previous.getCurrentState();
+                intervalFrom = previous.getTimestamp().getTime();
+                intervalTo = m.getTimestamp().getTime();
+            }
+        }
+
+        String device = String.valueOf(m.getDispositivoSensorId());
+        // Misma calle que usa RollupBackfill (la de `dispositivo`)
+        String street = StreetCatalog.getInstance().cachedStreets()
+                .resolve(m.getDispositivoSensorId(), m.getStreetId());
+        LocalDateTime at = m.getTimestamp().toLocalDateTime();
+
+        swapLock.readLock().lock();
+        try {
+            ConcurrentHashMap<Key, Counters> map = pending;
+            addAll(map, device, street, at, delta);
+            // Los cubos por hora empiezan en minuto exacto: basta con partir por minutos
+            for (long from = intervalFrom; from < intervalTo; ) {
+                long to = Math.min(intervalTo, Math.floorDiv(from, 60000L) * 60000L + 60000L);
+                Counters interval = new Counters();
+                interval.addStateMillis(intervalState, to - from);
+                addAll(map, device, street, new Timestamp(from).toLocalDateTime(), interval);
+                from = to;
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private static void addAll(ConcurrentHashMap<Key, Counters> map, String device, String street,
+                               LocalDateTime at, Counters delta) {
+        LocalDateTime minute = at.truncatedTo(ChronoUnit.MINUTES);
+        LocalDateTime hour = at.truncatedTo(ChronoUnit.HOURS);
+        add(map, new Key(RollupStore.MINUTE, RollupStore.DEVICE, device, minute), delta);
+        add(map, new Key(RollupStore.HOUR, RollupStore.DEVICE, device, hour), delta);
+        if (street != null) {
+            add(map, new Key(RollupStore.MINUTE, RollupStore.STREET, street, minute), delta);
+            add(map, new Key(RollupStore.HOUR, RollupStore.STREET, street, hour), delta);
+        }
+    }
+
+    private static void add(ConcurrentHashMap<Key, Counters> map, Key key, Counters delta) {
+        Counters c = map.computeIfAbsent(key, k -> new Counters());
+        synchronized (c) {
+            c.add(delta);
+        }
+    }
+
+    /**
+     * Vuelca los incrementos pendientes. Si la base de datos falla se
+     * devuelven al mapa para el siguiente intento (hasta maxKeys cubos).
+     */
+    public void flush() {
+        ConcurrentHashMap<Key, Counters> batch;
+        swapLock.writeLock().lock();
+        try {
+            batch = pending;
+            if (batch.isEmpty()) return;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+
+        long t0 = System.nanoTime();
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(false);
+            if (!tableReady) {
+                RollupStore.ensureTable(con);
+                tableReady = true;
+            }
+            RollupStore.upsert(con, batch);
+            con.commit();
+            flushes.incrementAndGet();
+            rowsUpserted.addAndGet(batch.size());
+            lastError = null;
+        } catch (Exception e) {
+            if (con != null) conector.cancelTransaction(con);
+            lastError = e.toString();
+            Log.logdb.error("Error flushing " + batch.size() + " rollup buckets", e);
+            restore(batch);
+        } finally {
+            conector.closeConnection(con);
+            lastFlushMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t0);
+        }
+    }
+
+    private void ensureTable() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            RollupStore.ensureTable(con);
+            tableReady = true;
+        } catch (Exception e) {
+            Log.logdb.error("Error creating `informacion_rollup`: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    private void restore(Map<Key, Counters> batch) {
+        swapLock.readLock().lock();
+        try {
+            ConcurrentHashMap<Key, Counters> map = pending;
+            for (Map.Entry<Key, Counters> e : batch.entrySet()) {
+                if (map.size() >= maxKeys && !map.containsKey(e.getKey())) {
+                    dropped.incrementAndGet();
+                    continue;
+                }
+                add(map, e.getKey(), e.getValue());
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("measurements", measurements.get());
+        s.put("pendingBuckets", pending.size());
+        s.put("flushes", flushes.get());
+        s.put("rowsUpserted", rowsUpserted.get());
+        s.put("droppedBuckets", dropped.get());
+        s.put("lastFlushMs", lastFlushMs);
+        s.put("lastError", lastError);
+        return s;
+    }
+}
@@ -0,0 +1,162 @@
+package logic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agrupa llamadas idénticas simultáneas: la primera con una clave ejecuta el
+ * trabajo y las que llegan mientras sigue en curso esperan y reciben el mismo
+ * resultado (o la misma excepción). No guarda nada al terminar; para eso está
+ * QueryResultCache.
+ *
+ * Evita que N pantallas abriendo el mismo panel ocupen N conexiones del pool
+ * para la misma consulta.
+ *
+ * El trabajo compartido no usa el RequestDeadline de la petición que lo lanza
+ * sino uno propio, que llega hasta el plazo más largo de las llamadas que lo
+ * esperan y solo se cancela cuando todas se han ido (vencidas o desconectadas).
+ * Así la desconexión o el vencimiento de la primera no deja sin respuesta a
+ * las demás. Los grupos se crean con {@link #named(String)} y sus
+ * métricas salen en /GetStats (sección singleFlight).
+ */
+public class SingleFlight<V> {
+
+    private static final Map<String, SingleFlight<?>> GROUPS = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Flight<V>> inFlight = new ConcurrentHashMap<>();
+
+    // ---- métricas ----
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicInteger maxShared = new AtomicInteger();
+
+    private SingleFlight() {}
+
+    @SuppressWarnings("unchecked")
+    public static <V> SingleFlight<V> named(String name) {
+        return (SingleFlight<V>) GROUPS.computeIfAbsent(name, n -> new SingleFlight<>());
+    }
+
+    private static final class Flight<V> {
+        final CompletableFuture<V> result = new CompletableFuture<>();
+        // Llamadas que comparten esta ejecución (incluida la que la lanza)
+        final AtomicInteger callers = new AtomicInteger(1);
+        // Plazo del trabajo compartido (null si quien lo lanza no tiene plazo)
+        final RequestDeadline shared;
+        // Llamadas que aún esperan el resultado
+        final AtomicInteger live = new AtomicInteger();
+
+        Flight(RequestDeadline caller) {
+            shared = caller == null ? null : new RequestDeadline(caller.remainingMillis());
+        }
+
+        /**
+         * Suma una llamada al trabajo compartido: alarga su plazo y, cuando la
+         * petición de la llamada se cancela, la descuenta; al irse la última
+         * se cancela el trabajo.
+         *
+         * @return false si el trabajo ya estaba cancelado
+         */
+        boolean join(RequestDeadline caller) {
+            if (shared == null) return true;
+            synchronized (this) {
+                if (shared.isCancelled()) return false;
+                live.incrementAndGet();
+            }
+            // Una llamada sin plazo nunca se va
+            if (caller == null) return true;
+            shared.extendTo(caller);
+            caller.onCancel(() -> {
+                if (live.decrementAndGet() == 0 && !result.isDone()) {
+                    synchronized (this) {
+                        if (live.get() == 0) shared.cancel(caller.cancelReason());
+                    }
+                }
+            });
+            return true;
+        }
+    }
+
+    /**
+     * Ejecuta {@code work}, o espera a la ejecución en curso con la misma clave.
+     */
+    public V execute(String key, Callable<V> work) throws Exception {
+        calls.incrementAndGet();
+        RequestDeadline caller = RequestDeadline.current();
+        Flight<V> mine = new Flight<>(caller);
+        Flight<V> current = inFlight.putIfAbsent(key, mine);
+        if (current != null && !current.join(caller)) {
+            // Ya se habían ido todas sus llamadas: esta hace su propia ejecución
+            executions.incrementAndGet();
+            return work.call();
+        }
+        if (current != null) {
+            coalesced.incrementAndGet();
+            current.callers.incrementAndGet();
+            try {
+                // Cada llamada espera como mucho hasta el plazo de su propia petición
+                return RequestDeadline.current() == null
+                        ? current.result.get()
+                        : RequestDeadline.await(current.result, Long.MAX_VALUE);
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            }
+        }
+
+        executions.incrementAndGet();
+        mine.join(caller);
+        // Las sentencias del trabajo toman como setQueryTimeout lo que le queda
+        // al plazo compartido al empezar cada una
+        if (mine.shared != null) mine.shared.bind();
+        V value;
+        try {
+            value = work.call();
+            mine.result.complete(value);
+        } catch (Exception | Error e) {
+            failures.incrementAndGet();
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            if (mine.shared != null) caller.bind();
+            // A partir de aquí una llamada nueva lanza su propia ejecución
+            inFlight.remove(key, mine);
+            maxShared.accumulateAndGet(mine.callers.get(), Math::max);
+        }
+        // La petición que lo lanzó puede haberse ido mientras otras esperaban
+        if (caller != null && caller.isCancelled()) throw new CancellationException(caller.cancelReason());
+        return value;
+    }
+
+    private static Exception unwrap(Throwable cause) {
+        if (cause instanceof Error) throw (Error) cause;
+        return (Exception) cause;
+    }
+
+    public Map<String, Object> stats() {
+        long c = calls.get();
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("calls", c);
+        s.put("executions", executions.get());
+        s.put("coalesced", coalesced.get());
+        s.put("coalescedRatio", c == 0 ? 0 : Math.round(coalesced.get() * 10000.0 / c) / 10000.0);
+        s.put("failures", failures.get());
+        s.put("inFlight", inFlight.size());
+        s.put("maxShared", maxShared.get());
+        return s;
+    }
+
+    public static Map<String, Object> allStats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        GROUPS.keySet().stream().sorted().forEach(name -> s.put(name, GROUPS.get(name).stats()));
+        return s;
+    }
+}
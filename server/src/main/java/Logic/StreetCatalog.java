@@ -0,0 +1,342 @@
+package logic;
+
+import Database.ConectionDDBB;
+import Database.DeviceDAO;
+
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Catálogo en memoria de calles y dispositivos (`calle` + `dispositivo`).
+ *
+ * Son datos casi estáticos, así que GetStreets y GetDevicesByStreet los sirven
+ * desde aquí con el JSON ya generado y su ETag. El catálogo se recarga la
+ * siguiente vez que se pide cuando DeviceDAO da de alta un dispositivo o
+ * cuando la comprobación periódica (CHECKSUM TABLE) detecta cambios hechos
+ * fuera del servidor.
+ *
+ * La ingesta solo usa {@link #cachedStreets()}, que nunca recarga: con la base
+ * de datos caída, los mensajes no esperan a MariaDB por el catálogo. Para
+ * ella la recarga la hace el planificador, al invalidarse y en cada
+ * comprobación periódica mientras siga desactualizado.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.catalog.checkIntervalSec  segundos entre comprobaciones (60)
+ */
+public class StreetCatalog {
+
+    private static final StreetCatalog INSTANCE = new StreetCatalog();
+
+    private static final Gson GSON = new Gson();
+
+    private final long checkIntervalSec = Long.getLong("ubicomp.catalog.checkIntervalSec", 60L);
+
+    private volatile Snapshot snapshot = null;
+    private volatile boolean stale = true;
+    private volatile ScheduledExecutorService scheduler = null;
+
+    // ---- métricas ----
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private volatile String lastError = null;
+
+    /**
+     * Respuesta JSON ya serializada con su ETag fuerte (hash del contenido).
+     */
+    public static final class Body {
+        public final String json;
+        public final String etag;
+
+        Body(String json) {
+            this.json = json;
+            this.etag = etagOf(json);
+        }
+    }
+
+    /**
+     * Calle con la que el dispositivo está (o quedará) guardado en la base de
+     * datos, según una versión fija del catálogo.
+     */
+    public interface StreetResolver {
+        String resolve(int deviceId, String messageStreet);
+    }
+
+    // Sin catálogo cargado (base de datos caída al arrancar) queda la calle del mensaje
+    private static final StreetResolver MESSAGE_STREET = (deviceId, messageStreet) -> messageStreet;
+
+    private static final class Snapshot implements StreetResolver {
+        final Body streets;
+        final Map<String, Body> devicesByStreet;
+        final Map<String, List<Integer>> deviceIdsByStreet;
+        final Map<String, String> districtByStreet;
+        final Map<Integer, String> streetByDevice;
+        final String checksum;
+        final long lastModified;
+
+        Snapshot(Body streets, Map<String, Body> devicesByStreet, Map<String, List<Integer>> deviceIdsByStreet,
+                 Map<String, String> districtByStreet, Map<Integer, String> streetByDevice,
+                 String checksum, long lastModified) {
+            this.streets = streets;
+            this.devicesByStreet = devicesByStreet;
+            this.deviceIdsByStreet = deviceIdsByStreet;
+            this.districtByStreet = districtByStreet;
+            this.streetByDevice = streetByDevice;
+            this.checksum = checksum;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * La de `dispositivo` si ya está dado de alta; si no, la que le
+         * asignará DeviceDAO (la del mensaje si existe en `calle`, o la calle
+         * por defecto). La calle del mensaje por sí sola no vale: un
+         * dispositivo puede publicar una calle que no es la suya.
+         */
+        @Override
+        public String resolve(int deviceId, String messageStreet) {
+            String street = streetByDevice.get(deviceId);
+            if (street != null) return street;
+            return messageStreet != null && districtByStreet.containsKey(messageStreet)
+                    ? messageStreet : DeviceDAO.DEFAULT_CALLE_STREET_ID;
+        }
+    }
+
+    private static final Body EMPTY = new Body("[]");
+
+    private StreetCatalog() {}
+
+    public static StreetCatalog getInstance() {
+        return INSTANCE;
+    }
+
+    public void schedule(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        // Primera carga ya, sin esperar a que la pida una lectura
+        scheduleRefresh();
+        scheduler.scheduleWithFixedDelay(this::checkForChanges, checkIntervalSec, checkIntervalSec, TimeUnit.SECONDS);
+        Log.logdb.info("StreetCatalog change check scheduled every " + checkIntervalSec + " s");
+    }
+
+    /**
+     * Marca el catálogo como desactualizado; se recarga en la siguiente lectura
+     * HTTP o en el planificador, lo que llegue antes.
+     */
+    public void invalidate() {
+        stale = true;
+        invalidations.incrementAndGet();
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) return;
+        try {
+            s.execute(() -> {
+                if (snapshot == null || stale) reload();
+            });
+        } catch (RejectedExecutionException e) {
+            // Planificador parado (apagado del servidor)
+        }
+    }
+
+    /**
+     * Resolución de calles sobre el catálogo tal como esté ahora, sin
+     * recargarlo ni tocar la base de datos. Para la ingesta y para quien
+     * resuelve muchos dispositivos de una vez contra la misma versión.
+     */
+    public StreetResolver cachedStreets() {
+        Snapshot s = snapshot;
+        return s != null ? s : MESSAGE_STREET;
+    }
+
+    /** Lista JSON de street_id ordenada. */
+    public Body streets() {
+        Snapshot s = current();
+        return s != null ? s.streets : EMPTY;
+    }
+
+    /** Lista JSON de sensor_id de la calle, ordenada. */
+    public Body devicesByStreet(String streetId) {
+        Snapshot s = current();
+        if (s == null) return EMPTY;
+        Body b = s.devicesByStreet.get(streetId);
+        return b != null ? b : EMPTY;
+    }
+
+    /** sensor_id de la calle, ordenados (lista vacía si no existe). */
+    public List<Integer> deviceIds(String streetId) {
+        Snapshot s = current();
+        if (s == null) return Collections.emptyList();
+        return s.deviceIdsByStreet.getOrDefault(streetId, Collections.emptyList());
+    }
+
+    /** sensor_id de todas las calles del distrito, ordenados. */
+    public List<Integer> deviceIdsByDistrict(String district) {
+        Snapshot s = current();
+        if (s == null) return Collections.emptyList();
+        List<Integer> out = new ArrayList<>();
+        for (Map.Entry<String, String> e : s.districtByStreet.entrySet()) {
+            if (district.equalsIgnoreCase(e.getValue())) {
+                out.addAll(s.deviceIdsByStreet.getOrDefault(e.getKey(), Collections.emptyList()));
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    /** Calle del dispositivo, o null si no está dado de alta. */
+    public String streetOf(int deviceId) {
+        Snapshot s = current();
+        return s != null ? s.streetByDevice.get(deviceId) : null;
+    }
+
+    /** Momento (ms, redondeado a segundos) del último cambio de contenido. */
+    public long lastModified() {
+        Snapshot s = current();
+        return s != null ? s.lastModified : 0L;
+    }
+
+    private Snapshot current() {
+        reads.incrementAndGet();
+        Snapshot s = snapshot;
+        if (s == null || stale) {
+            s = reload();
+        }
+        return s;
+    }
+
+    /**
+     * Recarga el catálogo. Si falla se sigue sirviendo el anterior (si lo hay).
+     */
+    private synchronized Snapshot reload() {
+        if (snapshot != null && !stale) return snapshot;
+        // Se baja la marca antes de leer: una invalidación durante la carga
+        // vuelve a dejarla activa y fuerza otra recarga
+        stale = false;
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainReadConnection();
+            Snapshot loaded = load(con, snapshot);
+            snapshot = loaded;
+            reloads.incrementAndGet();
+            lastError = null;
+            Log.logdb.info("Street catalog loaded: " + loaded.districtByStreet.size() + " streets");
+        } catch (Exception e) {
+            stale = true;
+            lastError = e.toString();
+            Log.logdb.error("Error loading street catalog", e);
+        } finally {
+            conector.closeConnection(con);
+        }
+        return snapshot;
+    }
+
+    private static Snapshot load(Connection con, Snapshot previous) throws Exception {
+        String checksum = checksum(con);
+
+        // TreeMap: calles ordenadas por street_id
+        TreeMap<String, String> districts = new TreeMap<>();
+        try (PreparedStatement ps = con.prepareStatement("SELECT street_id, district FROM calle");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) districts.put(rs.getString(1), rs.getString(2));
+        }
+
+        Map<String, List<Integer>> ids = new HashMap<>();
+        Map<Integer, String> streetByDevice = new HashMap<>();
+        try (PreparedStatement ps = con.prepareStatement(
+                "SELECT sensor_id, calle_street_id FROM dispositivo ORDER BY sensor_id");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                ids.computeIfAbsent(rs.getString(2), k -> new ArrayList<>()).add(rs.getInt(1));
+                streetByDevice.put(rs.getInt(1), rs.getString(2));
+            }
+        }
+
+        Body streets = new Body(GSON.toJson(new ArrayList<>(districts.keySet())));
+        Map<String, Body> bodies = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> e : ids.entrySet()) {
+            e.setValue(Collections.unmodifiableList(e.getValue()));
+            bodies.put(e.getKey(), new Body(GSON.toJson(e.getValue())));
+        }
+
+        // Last-Modified solo avanza si el contenido ha cambiado de verdad
+        long lastModified = (System.currentTimeMillis() / 1000L) * 1000L;
+        if (previous != null && previous.checksum.equals(checksum)) {
+            lastModified = previous.lastModified;
+        }
+        return new Snapshot(streets, bodies, ids, districts, streetByDevice, checksum, lastModified);
+    }
+
+    private static String checksum(Connection con) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        try (Statement st = con.createStatement();
+             ResultSet rs = st.executeQuery("CHECKSUM TABLE calle, dispositivo")) {
+            while (rs.next()) sb.append(rs.getString(2)).append('/');
+        }
+        return sb.toString();
+    }
+
+    private void checkForChanges() {
+        Snapshot s = snapshot;
+        if (s == null || stale) {
+            // Reintento tras una carga fallida
+            reload();
+            return;
+        }
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainReadConnection();
+            if (!checksum(con).equals(s.checksum)) {
+                Log.logdb.info("`calle`/`dispositivo` changed; street catalog invalidated");
+                invalidate();
+            }
+        } catch (Exception e) {
+            Log.logdb.warn("Error checking street catalog for changes: " + e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    private static String etagOf(String json) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(json.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder("\"");
+            for (int i = 0; i < 12; i++) sb.append(String.format("%02x", digest[i]));
+            return sb.append('"').toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Snapshot s = snapshot;
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("streets", s != null ? s.districtByStreet.size() : 0);
+        m.put("stale", stale);
+        m.put("reads", reads.get());
+        m.put("reloads", reloads.get());
+        m.put("invalidations", invalidations.get());
+        m.put("lastError", lastError);
+        return m;
+    }
+}
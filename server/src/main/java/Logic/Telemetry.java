@@ -0,0 +1,104 @@
+package logic;
+
+import java.sql.Timestamp;
+
+/**
+ * Registro mutable y reutilizable con la telemetría publicada por el ESP32
+ * (ver publishTrafficLight en MQTT.hpp). Lo rellena TelemetryDecoder; cada
+ * carril de ingesta mantiene el suyo y lo limpia con reset() antes de decodificar.
+ */
+public class Telemetry {
+
+    // Metadatos del mensaje
+    public int sensorId;
+    public String sensorType;
+    public String streetId;
+    public long timestampMillis;
+
+    // Bloque "data"
+    public String currentState;
+    public int cyclePositionSeconds;
+    public int timeRemainingSeconds;
+    public int cycleDurationSeconds;
+    public String trafficLightType;
+    public String circulationDirection;
+    public boolean pedestrianWaiting;
+    public boolean pedestrianButtonPressed;
+    public boolean malfunctionDetected;
+    public int cycleCount;
+    public boolean stateChanged;
+    public String lastStateChange;
+
+    // Campos obligatorios vistos en el mensaje (máscara de bits)
+    int seen;
+
+    // Primer error de tipo encontrado al decodificar (null si ninguno) y su ruta JSON
+    DecodeResult error;
+    public String errorPath;
+
+    static final int SEEN_SENSOR_ID = 1;
+    static final int SEEN_TIMESTAMP = 1 << 1;
+    static final int SEEN_STATE = 1 << 2;
+    static final int SEEN_CYCLE_POSITION = 1 << 3;
+    static final int SEEN_TIME_REMAINING = 1 << 4;
+    static final int SEEN_CYCLE_DURATION = 1 << 5;
+    static final int SEEN_CYCLE_COUNT = 1 << 6;
+    static final int SEEN_REQUIRED = SEEN_SENSOR_ID | SEEN_TIMESTAMP | SEEN_STATE
+            | SEEN_CYCLE_POSITION | SEEN_TIME_REMAINING | SEEN_CYCLE_DURATION | SEEN_CYCLE_COUNT;
+
+    public Telemetry() {
+        reset();
+    }
+
+    public void reset() {
+        sensorId = 0;
+        sensorType = null;
+        streetId = null;
+        timestampMillis = IsoTimestamps.INVALID;
+        currentState = null;
+        cyclePositionSeconds = 0;
+        timeRemainingSeconds = 0;
+        cycleDurationSeconds = 0;
+        trafficLightType = null;
+        circulationDirection = null;
+        pedestrianWaiting = false;
+        pedestrianButtonPressed = false;
+        malfunctionDetected = false;
+        cycleCount = 0;
+        stateChanged = false;
+        lastStateChange = null;
+        seen = 0;
+        error = null;
+        errorPath = null;
+    }
+
+    /**
+     * @return true si el mensaje traía todos los campos que necesita la tabla "informacion"
+     */
+    public boolean isComplete() {
+        return (seen & SEEN_REQUIRED) == SEEN_REQUIRED;
+    }
+
+    /**
+     * Copia inmutable para encolar en el escritor por lotes.
+     */
+    public Measurement toMeasurement() {
+        Measurement m = new Measurement(
+                new Timestamp(timestampMillis),
+                currentState,
+                cyclePositionSeconds,
+                timeRemainingSeconds,
+                cycleDurationSeconds,
+                trafficLightType,
+                circulationDirection,
+                pedestrianWaiting,
+                pedestrianButtonPressed,
+                malfunctionDetected,
+                cycleCount,
+                stateChanged,
+                lastStateChange,
+                sensorId);
+        m.setStreetId(streetId);
+        return m;
+    }
+}
@@ -0,0 +1,186 @@
+package logic;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Decodificador en streaming del JSON de telemetría del semáforo.
+ *
+ * Lee directamente los bytes del MqttMessage con un JsonReader de Gson, en
+ * una sola pasada y sin construir el árbol JsonObject: cada clave conocida se
+ * copia al Telemetry recibido y el resto se salta.
+ */
+public class TelemetryDecoder {
+
+    private TelemetryDecoder() {}
+
+    /**
+     * Rellena {@code out} (que se limpia antes) con el contenido del payload.
+     * No lanza excepciones por mensajes incorrectos: devuelve el motivo, y en
+     * out.errorPath queda la ruta JSON del campo que falló (si aplica).
+     *
+     * @return OK si el mensaje trae todos los campos obligatorios bien formados
+     */
+    public static DecodeResult decode(byte[] payload, Telemetry out) {
+        out.reset();
+        // Comprobación previa barata: evita montar el JsonReader para basura
+        int first = firstNonBlank(payload);
+        if (first < 0) return DecodeResult.EMPTY_PAYLOAD;
+        if (payload[first] != '{') return DecodeResult.NOT_AN_OBJECT;
+
+        // Un InputStreamReader reservaría 8 KB de búfer por mensaje: sale más
+        // barato decodificar el payload (unos cientos de bytes) a un String
+        try (JsonReader reader = new JsonReader(new StringReader(new String(payload, StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "sensor_id":
+                        out.sensorId = readInt(reader, out);
+                        if (out.error == null) out.seen |= Telemetry.SEEN_SENSOR_ID;
+                        break;
+                    case "sensor_type":
+                        out.sensorType = readString(reader);
+                        break;
+                    case "street_id":
+                        out.streetId = readString(reader);
+                        break;
+                    case "timestamp":
+                        String ts = readString(reader);
+                        out.timestampMillis = ts == null ? IsoTimestamps.INVALID : IsoTimestamps.parseEpochMillis(ts);
+                        if (out.timestampMillis != IsoTimestamps.INVALID) out.seen |= Telemetry.SEEN_TIMESTAMP;
+                        break;
+                    case "data":
+                        readData(reader, out);
+                        break;
+                    default:
+                        // "location" incluido: no se guarda en `informacion`
+                        reader.skipValue();
+                }
+                if (out.error != null) return out.error;
+            }
+            reader.endObject();
+        } catch (IOException | IllegalStateException e) {
+            // Único caso con excepción: lo lanza el propio JsonReader con JSON roto
+            return DecodeResult.MALFORMED_JSON;
+        }
+        return validate(out);
+    }
+
+    private static DecodeResult validate(Telemetry t) {
+        if ((t.seen & Telemetry.SEEN_SENSOR_ID) == 0) return DecodeResult.MISSING_SENSOR_ID;
+        if ((t.seen & Telemetry.SEEN_TIMESTAMP) == 0) return DecodeResult.BAD_TIMESTAMP;
+        if ((t.seen & Telemetry.SEEN_STATE) == 0) return DecodeResult.MISSING_STATE;
+        if (!t.isComplete()) return DecodeResult.MISSING_FIELDS;
+        return DecodeResult.OK;
+    }
+
+    private static int firstNonBlank(byte[] payload) {
+        for (int i = 0; i < payload.length; i++) {
+            byte b = payload[i];
+            if (b != ' ' && b != '\n' && b != '\r' && b != '\t') return i;
+        }
+        return -1;
+    }
+
+    private static void readData(JsonReader reader, Telemetry out) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "current_state":
+                    out.currentState = readString(reader);
+                    if (out.currentState != null) out.seen |= Telemetry.SEEN_STATE;
+                    break;
+                case "cycle_position_seconds":
+                    out.cyclePositionSeconds = readInt(reader, out);
+                    out.seen |= Telemetry.SEEN_CYCLE_POSITION;
+                    break;
+                case "time_remaining_seconds":
+                    out.timeRemainingSeconds = readInt(reader, out);
+                    out.seen |= Telemetry.SEEN_TIME_REMAINING;
+                    break;
+                case "cycle_duration_seconds":
+                    out.cycleDurationSeconds = readInt(reader, out);
+                    out.seen |= Telemetry.SEEN_CYCLE_DURATION;
+                    break;
+                case "traffic_light_type":        out.trafficLightType = readString(reader); break;
+                case "circulation_direction":     out.circulationDirection = readString(reader); break;
+                case "pedestrian_waiting":        out.pedestrianWaiting = readBoolean(reader); break;
+                case "pedestrian_button_pressed": out.pedestrianButtonPressed = readBoolean(reader); break;
+                case "malfunction_detected":      out.malfunctionDetected = readBoolean(reader); break;
+                case "cycle_count":
+                    out.cycleCount = readInt(reader, out);
+                    out.seen |= Telemetry.SEEN_CYCLE_COUNT;
+                    break;
+                case "state_changed":             out.stateChanged = readBoolean(reader); break;
+                case "last_state_change":         out.lastStateChange = readString(reader); break;
+                default:                          reader.skipValue();
+            }
+            if (out.error != null) return;
+        }
+        reader.endObject();
+    }
+
+    // ===================== Lectores tolerantes =====================
+
+    private static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Enteros que pueden llegar como número o como cadena ("1" en sensor_id).
+     * Si el valor no es un entero marca BAD_FIELD_TYPE en out y devuelve 0.
+     */
+    private static int readInt(JsonReader reader, Telemetry out) throws IOException {
+        JsonToken t = reader.peek();
+        String text;
+        if (t == JsonToken.NUMBER || t == JsonToken.STRING) {
+            text = reader.nextString().trim();
+        } else {
+            out.errorPath = reader.getPath();
+            reader.skipValue();
+            out.error = DecodeResult.BAD_FIELD_TYPE;
+            return 0;
+        }
+        long value = 0;
+        int i = 0;
+        boolean negative = text.startsWith("-");
+        if (negative || text.startsWith("+")) i = 1;
+        if (i == text.length() || text.length() - i > 10) {
+            return badInt(reader, out);
+        }
+        for (; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') return badInt(reader, out);
+            value = value * 10 + (c - '0');
+        }
+        if (negative) value = -value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) return badInt(reader, out);
+        return (int) value;
+    }
+
+    private static int badInt(JsonReader reader, Telemetry out) {
+        out.errorPath = reader.getPath();
+        out.error = DecodeResult.BAD_FIELD_TYPE;
+        return 0;
+    }
+
+    private static boolean readBoolean(JsonReader reader) throws IOException {
+        JsonToken t = reader.peek();
+        if (t == JsonToken.BOOLEAN) return reader.nextBoolean();
+        if (t == JsonToken.STRING) return Boolean.parseBoolean(reader.nextString());
+        reader.skipValue();
+        return false;
+    }
+}
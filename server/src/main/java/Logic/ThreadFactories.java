@@ -0,0 +1,60 @@
+package logic;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factorías de hilos con nombre para los servicios en segundo plano.
+ *
+ * Los hilos virtuales se crean por reflexión para que el WAR siga
+ * compilando con Java 17; si la JVM no los soporta se usan hilos de
+ * plataforma daemon.
+ */
+public class ThreadFactories {
+
+    private static final Method OF_VIRTUAL = lookupOfVirtual();
+
+    private ThreadFactories() {}
+
+    /**
+     * Hilos de plataforma daemon llamados prefix-0, prefix-1, ...
+     */
+    public static ThreadFactory platform(String prefix) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, prefix + "-" + n.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /**
+     * Hilos virtuales si la JVM los soporta (Java 21+), si no hilos de plataforma.
+     */
+    public static ThreadFactory virtualOrPlatform(String prefix) {
+        if (OF_VIRTUAL != null) {
+            try {
+                Object builder = OF_VIRTUAL.invoke(null);
+                Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+                builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix + "-", 0L);
+                return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            } catch (ReflectiveOperationException e) {
+                Log.log.warn("Virtual threads not available, using platform threads: " + e);
+            }
+        }
+        return platform(prefix);
+    }
+
+    public static boolean virtualThreadsSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    private static Method lookupOfVirtual() {
+        try {
+            return Thread.class.getMethod("ofVirtual");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
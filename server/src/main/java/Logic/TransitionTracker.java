@@ -0,0 +1,204 @@
+package logic;
+
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import Database.ConectionDDBB;
+import Database.TransitionStore;
+import Database.TransitionStore.Interval;
+
+/**
+ * Construye incrementalmente `informacion_transicion` (un tramo por intervalo
+ * de estado) a partir de las medidas que llegan.
+ *
+ * Cada dispositivo tiene en memoria su tramo en curso (fase, inicio,
+ * cycle_count al empezar y última medida vista). La fase es el estado y la
+ * duración de ciclo, que separa las fases de peatones que el firmware reporta
+ * todas como "red". El tramo se cierra cuando llega una medida de otra fase
+ * o con state_changed=true (fin = esa
+ * medida), o cuando entre dos medidas pasa más de maxGapSec (fin = la última
+ * medida vista: no se inventa el estado durante la caída). Los tramos
+ * cerrados se insertan por lotes desde el planificador de mantenimiento.
+ *
+ * Al arrancar, el tramo en curso se reanuda con el último estado conocido
+ * (LatestStateCache) desde el fin del último tramo guardado. El histórico
+ * anterior se carga con Database.TransitionRebuild.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.transition.enabled    mantener la tabla (true)
+ *  - ubicomp.transition.maxGapSec  hueco máximo dentro de un tramo (120)
+ *  - ubicomp.transition.flushSec   periodo de inserción (5)
+ *  - ubicomp.transition.maxQueue   tramos pendientes como máximo si la BD falla (100000)
+ */
+public class TransitionTracker {
+
+    private static final TransitionTracker INSTANCE = new TransitionTracker();
+
+    private final boolean enabled = Boolean.parseBoolean(System.getProperty("ubicomp.transition.enabled", "true"));
+    private final long maxGapMillis = Long.getLong("ubicomp.transition.maxGapSec", 120L) * 1000L;
+    private final long flushSec = Long.getLong("ubicomp.transition.flushSec", 5L);
+    private final int maxQueue = Integer.getInteger("ubicomp.transition.maxQueue", 100000);
+
+    private final ConcurrentHashMap<Integer, OpenInterval> open = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Interval> closed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger closedSize = new AtomicInteger();
+
+    // ---- métricas ----
+    private final AtomicLong intervalsClosed = new AtomicLong();
+    private final AtomicLong intervalsWritten = new AtomicLong();
+    private final AtomicLong gaps = new AtomicLong();
+    private final AtomicLong outOfOrder = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile String lastError = null;
+
+    private TransitionTracker() {}
+
+    public static TransitionTracker getInstance() {
+        return INSTANCE;
+    }
+
+    private static final class OpenInterval {
+        String state;
+        Integer cycleDuration;
+        long startMillis;
+        long lastSeenMillis;
+        Integer cycleCount;
+
+        OpenInterval(Measurement m, long startMillis, long lastSeenMillis) {
+            this.state = m.getCurrentState();
+            this.cycleDuration = m.getCycleDurationSeconds();
+            this.startMillis = startMillis;
+            this.lastSeenMillis = lastSeenMillis;
+            this.cycleCount = m.getCycleCount();
+        }
+
+        boolean samePhase(Measurement m) {
+            return Objects.equals(state, m.getCurrentState())
+                    && Objects.equals(cycleDuration, m.getCycleDurationSeconds());
+        }
+    }
+
+    /**
+     * Crea la tabla, reanuda los tramos en curso y programa las inserciones.
+     * Debe llamarse después de LatestStateCache.warm().
+     */
+    public void schedule(ScheduledExecutorService scheduler) {
+        if (!enabled) return;
+        scheduler.execute(this::resume);
+        scheduler.scheduleWithFixedDelay(this::flush, flushSec, flushSec, TimeUnit.SECONDS);
+        Log.logdb.info("TransitionTracker scheduled every " + flushSec + " s");
+    }
+
+    private void resume() {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            TransitionStore.ensureTable(con);
+            Map<Integer, Long> ends = TransitionStore.lastEnds(con);
+            int resumed = 0;
+            for (Measurement m : LatestStateCache.getInstance().getStreet(null)) {
+                long seen = m.getTimestamp().getTime();
+                Long end = ends.get(m.getDispositivoSensorId());
+                long start = end != null && end <= seen ? end : seen;
+                // Si ya llegaron medidas tras arrancar, manda lo que se haya abierto con ellas
+                if (open.putIfAbsent(m.getDispositivoSensorId(), new OpenInterval(m, start, seen)) == null) {
+                    resumed++;
+                }
+            }
+            Log.logdb.info("TransitionTracker resumed " + resumed + " open intervals");
+        } catch (Exception e) {
+            lastError = e.toString();
+            Log.logdb.error("Error resuming state intervals", e);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    public void onMeasurement(Measurement m) {
+        if (!enabled || m.getDispositivoSensorId() == null || m.getTimestamp() == null) return;
+        long ts = m.getTimestamp().getTime();
+        int device = m.getDispositivoSensorId();
+        open.compute(device, (k, cur) -> {
+            if (cur == null) {
+                return new OpenInterval(m, ts, ts);
+            }
+            if (ts <= cur.lastSeenMillis) {
+                outOfOrder.incrementAndGet();
+                return cur;
+            }
+            if (ts - cur.lastSeenMillis > maxGapMillis) {
+                gaps.incrementAndGet();
+                close(device, cur, cur.lastSeenMillis);
+                return new OpenInterval(m, ts, ts);
+            }
+            if (!cur.samePhase(m) || Boolean.TRUE.equals(m.getStateChanged())) {
+                close(device, cur, ts);
+                return new OpenInterval(m, ts, ts);
+            }
+            cur.lastSeenMillis = ts;
+            return cur;
+        });
+    }
+
+    private void close(int device, OpenInterval cur, long endMillis) {
+        if (endMillis <= cur.startMillis) return;
+        intervalsClosed.incrementAndGet();
+        if (closedSize.get() >= maxQueue) {
+            dropped.incrementAndGet();
+            return;
+        }
+        closed.add(new Interval(device, cur.startMillis, endMillis, cur.state, cur.cycleDuration, cur.cycleCount));
+        closedSize.incrementAndGet();
+    }
+
+    public void flush() {
+        if (closed.isEmpty()) return;
+        List<Interval> batch = new ArrayList<>();
+        Interval t;
+        while ((t = closed.poll()) != null) {
+            batch.add(t);
+            closedSize.decrementAndGet();
+        }
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainConnection(true);
+            TransitionStore.insert(con, batch);
+            intervalsWritten.addAndGet(batch.size());
+            lastError = null;
+        } catch (Exception e) {
+            lastError = e.toString();
+            Log.logdb.error("Error inserting " + batch.size() + " state intervals", e);
+            // Se reintentan en el siguiente volcado (INSERT IGNORE: sin duplicados)
+            closed.addAll(batch);
+            closedSize.addAndGet(batch.size());
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("enabled", enabled);
+        s.put("openIntervals", open.size());
+        s.put("pending", closedSize.get());
+        s.put("closed", intervalsClosed.get());
+        s.put("written", intervalsWritten.get());
+        s.put("gaps", gaps.get());
+        s.put("outOfOrder", outOfOrder.get());
+        s.put("dropped", dropped.get());
+        s.put("lastError", lastError);
+        return s;
+    }
+}
@@ -0,0 +1,184 @@
+package mqtt;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import logic.Log;
+import logic.Logic;
+import logic.ThreadFactories;
+
+/**
+ * Etapa de reparto entre el hilo de callback de Paho y la ingesta.
+ *
+ * Cada mensaje se entrega de inmediato a uno de N carriles (lanes) con cola
+ * acotada y un único consumidor. El carril se elige por el topic, que es
+ * único por dispositivo (sensors/&lt;calle&gt;/traffic_light/TL_xxx/state), así
+ * que los mensajes de un mismo sensor_id se procesan siempre en orden.
+ *
+ * Si la cola de un carril está llena se espera hasta offerTimeoutMs
+ * (contrapresión sobre Paho) y, si sigue llena, el mensaje se descarta.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.dispatch.lanes           número de carriles (núcleos disponibles)
+ *  - ubicomp.dispatch.queue           capacidad de cada carril (2000)
+ *  - ubicomp.dispatch.offerTimeoutMs  espera máxima con el carril lleno (20)
+ *  - ubicomp.dispatch.virtualThreads  usar hilos virtuales si la JVM los soporta (false)
+ */
+public class IngestionDispatcher {
+
+    private static final IngestionDispatcher INSTANCE = new IngestionDispatcher();
+
+    private final int laneCount = Math.max(1,
+            Integer.getInteger("ubicomp.dispatch.lanes", Runtime.getRuntime().availableProcessors()));
+    private final int laneCapacity = Integer.getInteger("ubicomp.dispatch.queue", 2000);
+    private final long offerTimeoutMs = Long.getLong("ubicomp.dispatch.offerTimeoutMs", 20L);
+    private final boolean virtualThreads = Boolean.getBoolean("ubicomp.dispatch.virtualThreads");
+
+    private volatile Lane[] lanes = new Lane[0];
+    private volatile boolean running = false;
+
+    // ---- métricas ----
+    private final AtomicLong dispatched = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private IngestionDispatcher() {}
+
+    public static IngestionDispatcher getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        ThreadFactory factory = virtualThreads
+                ? ThreadFactories.virtualOrPlatform("ingest-lane")
+                : ThreadFactories.platform("ingest-lane");
+        Lane[] created = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            created[i] = new Lane(laneCapacity);
+            created[i].thread = factory.newThread(created[i]::runLoop);
+        }
+        lanes = created;
+        running = true;
+        for (Lane lane : lanes) lane.thread.start();
+        Log.logmqtt.info("IngestionDispatcher started with " + laneCount + " lanes (capacity="
+                + laneCapacity + ", virtualThreads=" + (virtualThreads && ThreadFactories.virtualThreadsSupported()) + ")");
+    }
+
+    /**
+     * Detiene los carriles tras procesar los mensajes que ya estaban encolados.
+     */
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Lane lane : lanes) lane.thread.interrupt();
+        for (Lane lane : lanes) {
+            try {
+                lane.thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Log.logmqtt.info("IngestionDispatcher stopped. Dispatched=" + dispatched.get() + " dropped=" + dropped.get());
+    }
+
+    /**
+     * Entrega un mensaje a su carril. Se llama desde el hilo de callback de Paho.
+     *
+     * @return false si el mensaje se ha descartado por contrapresión
+     */
+    public boolean dispatch(String topic, byte[] payload) {
+        Lane[] current = lanes;
+        if (!running || current.length == 0) {
+            process(topic, payload);
+            return true;
+        }
+        Task task = new Task(topic, payload);
+        Lane lane = current[Math.floorMod(topic.hashCode(), current.length)];
+        if (lane.queue.offer(task)) {
+            dispatched.incrementAndGet();
+            return true;
+        }
+        backpressureWaits.incrementAndGet();
+        try {
+            if (lane.queue.offer(task, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                dispatched.incrementAndGet();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        dropped.incrementAndGet();
+        Log.logmqtt.warn("Ingestion lane full, message dropped. Topic: {}", topic);
+        return false;
+    }
+
+    private static void process(String topic, byte[] payload) {
+        try {
+            Logic.insertFromMqtt(topic, payload);
+        } catch (Exception e) {
+            Log.logmqtt.error("Error processing MQTT message from " + topic, e);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("running", running);
+        s.put("lanes", laneCount);
+        s.put("dispatched", dispatched.get());
+        s.put("backpressureWaits", backpressureWaits.get());
+        s.put("dropped", dropped.get());
+        List<Integer> depths = new ArrayList<>();
+        long processed = 0;
+        for (Lane lane : lanes) {
+            depths.add(lane.queue.size());
+            processed += lane.processed.get();
+        }
+        s.put("processed", processed);
+        s.put("queueDepth", depths);
+        return s;
+    }
+
+    // ===================== Carril =====================
+
+    private static final class Task {
+        final String topic;
+        final byte[] payload;
+
+        Task(String topic, byte[] payload) {
+            this.topic = topic;
+            this.payload = payload;
+        }
+    }
+
+    private final class Lane {
+        final BlockingQueue<Task> queue;
+        final AtomicLong processed = new AtomicLong();
+        Thread thread;
+
+        Lane(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void runLoop() {
+            while (running || !queue.isEmpty()) {
+                Task task;
+                try {
+                    task = running ? queue.take() : queue.poll();
+                } catch (InterruptedException e) {
+                    continue;
+                }
+                if (task == null) break;
+                process(task.topic, task.payload);
+                processed.incrementAndGet();
+            }
+        }
+    }
+}
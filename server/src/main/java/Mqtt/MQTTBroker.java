@@ -37,4 +37,11 @@ public class MQTTBroker {
     public static String getPublisherClientId() {
         return clientId + "-publisher";
     }
+
+    /**
+     * Topic de comandos de un semáforo: sensors/&lt;calle&gt;/traffic_light/TL_xxx/cmd
+     */
+    public static String getCommandTopic(String streetId, int deviceId) {
+        return String.format("sensors/%s/traffic_light/TL_%03d/cmd", streetId, deviceId);
+    }
 }
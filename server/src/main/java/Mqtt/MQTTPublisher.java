@@ -10,12 +10,19 @@ import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 public class MQTTPublisher {
 
     /**
+     * Publica con el pool de conexiones persistentes si está arrancado (sin
+     * esperar al ACK); si no, abre una conexión solo para este mensaje.
      *
      * @param broker
      * @param topic
      * @param content
      */
     public static void publish(MQTTBroker broker, String topic, String content) {
+        MQTTPublisherPool pool = MQTTPublisherPool.getInstance();
+        if (pool.isRunning()) {
+            pool.publish(topic, content, pool.qosFor(null));
+            return;
+        }
         MemoryPersistence persistence = new MemoryPersistence();
         try {
             MqttClient sampleClient = new MqttClient(MQTTBroker.getBroker(), MQTTBroker.getPublisherClientId(), persistence);
@@ -0,0 +1,338 @@
+package mqtt;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.paho.client.mqttv3.IMqttActionListener;
+import org.eclipse.paho.client.mqttv3.IMqttToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+
+import logic.Log;
+
+/**
+ * Publicación de comandos MQTT con conexiones persistentes.
+ *
+ * Projectinitializer lo arranca una vez: abre N clientes asíncronos, cada
+ * uno con su propio client id (SemaforoAyL-publisher-&lt;pid&gt;-&lt;n&gt;, para
+ * que no se expulsen entre sí en el broker) y reconexión automática. Cada
+ * publicación va al siguiente cliente conectado (round robin) y devuelve un
+ * CompletableFuture que se completa con el ACK del broker, sin bloquear.
+ *
+ * Entre todos los clientes no puede haber más de publishers × maxInflight
+ * publicaciones sin ACK (Paho rechaza el exceso con REASON_CODE_MAX_INFLIGHT);
+ * las que no caben esperan en una cola y salen según llegan los ACK.
+ *
+ * La QoS se elige por tipo de comando: ubicomp.mqtt.qos.&lt;accion&gt;
+ * (p. ej. ubicomp.mqtt.qos.force=1) y, si no está, ubicomp.mqtt.qos.
+ *
+ * Configuración (propiedades de sistema):
+ *  - ubicomp.mqtt.publishers     clientes en el pool (2)
+ *  - ubicomp.mqtt.maxInflight    publicaciones sin ACK por cliente (100)
+ *  - ubicomp.mqtt.qos            QoS por defecto de los comandos (1)
+ *  - ubicomp.mqtt.qos.<accion>   QoS de un tipo de comando concreto
+ */
+public class MQTTPublisherPool {
+
+    private static final MQTTPublisherPool INSTANCE = new MQTTPublisherPool();
+
+    private final int size = Math.max(1, Integer.getInteger("ubicomp.mqtt.publishers", 2));
+    private final int maxInflight = Integer.getInteger("ubicomp.mqtt.maxInflight", 100);
+    private final int defaultQos = Integer.getInteger("ubicomp.mqtt.qos", 1);
+
+    // Publicaciones sin ACK permitidas en todo el pool, y las que esperan turno
+    private final Semaphore inflightPermits = new Semaphore(size * maxInflight);
+    private final ConcurrentLinkedDeque<Pending> waiting = new ConcurrentLinkedDeque<>();
+
+    private volatile Slot[] slots = new Slot[0];
+    private volatile boolean running = false;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // ---- métricas ----
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong ackNanosTotal = new AtomicLong();
+    private final AtomicLong ackNanosMax = new AtomicLong();
+
+    private MQTTPublisherPool() {}
+
+    public static MQTTPublisherPool getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        String prefix = MQTTBroker.getPublisherClientId() + "-" + Long.toHexString(ProcessHandle.current().pid());
+        Slot[] created = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            try {
+                created[i] = new Slot(new MqttAsyncClient(MQTTBroker.getBroker(), prefix + "-" + i, new MemoryPersistence()));
+            } catch (MqttException e) {
+                Log.logmqtt.error("Error creating MQTT publisher " + i + ": {}", e);
+                created[i] = new Slot(null);
+            }
+        }
+        slots = created;
+        running = true;
+        List<IMqttToken> pending = new ArrayList<>();
+        for (Slot slot : created) {
+            IMqttToken token = slot.connect();
+            if (token != null) pending.add(token);
+        }
+        // Espera acotada a las conexiones iniciales, así los primeros comandos
+        // no fallan; si el broker no responde se seguirá intentando al publicar
+        for (IMqttToken token : pending) {
+            try {
+                token.waitForCompletion(TimeUnit.SECONDS.toMillis(5));
+            } catch (MqttException e) {
+                // ya registrado por el listener
+            }
+        }
+        Log.logmqtt.info("MQTTPublisherPool started with " + size + " clients (defaultQos=" + defaultQos + ")");
+    }
+
+    public synchronized void stop() {
+        if (!running) return;
+        running = false;
+        for (Pending p; (p = waiting.poll()) != null; ) {
+            failed.incrementAndGet();
+            p.result.completeExceptionally(new IllegalStateException("MQTT publisher pool stopped"));
+        }
+        for (Slot slot : slots) slot.close();
+        Log.logmqtt.info("MQTTPublisherPool stopped. Published=" + published.get() + " failed=" + failed.get());
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Publicaciones que pueden estar a la vez sin ACK en todo el pool. */
+    public int capacity() {
+        return size * maxInflight;
+    }
+
+    /**
+     * QoS configurada para un tipo de comando (force, buzzer, ...).
+     */
+    public int qosFor(String action) {
+        if (action != null) {
+            Integer qos = Integer.getInteger("ubicomp.mqtt.qos." + action);
+            if (qos != null) return qos;
+        }
+        return defaultQos;
+    }
+
+    /**
+     * Publica sin bloquear. El future se completa cuando el broker confirma
+     * la entrega según la QoS, o con error si no hay conexión o falla el envío.
+     * Si el pool ya tiene todas sus publicaciones en vuelo, esta espera en cola.
+     */
+    public CompletableFuture<Void> publish(String topic, String content, int qos) {
+        MqttMessage message = new MqttMessage(content.getBytes(StandardCharsets.UTF_8));
+        message.setQos(qos);
+        Pending p = new Pending(topic, message);
+        if (!running) {
+            failed.incrementAndGet();
+            p.result.completeExceptionally(new IllegalStateException("No MQTT publisher connected"));
+            return p.result;
+        }
+        queued.incrementAndGet();
+        waiting.add(p);
+        drain();
+        return p.result;
+    }
+
+    private static final class Pending {
+        final String topic;
+        final MqttMessage message;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        Pending(String topic, MqttMessage message) {
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+
+    private enum Outcome { SENT, FAILED, BUSY }
+
+    /**
+     * Saca de la cola tantas publicaciones como permisos libres haya. Se
+     * llama al publicar y cada vez que un ACK (o un fallo) libera un permiso.
+     */
+    private void drain() {
+        while (!waiting.isEmpty() && inflightPermits.tryAcquire()) {
+            Pending p = waiting.poll();
+            if (p == null) {
+                inflightPermits.release();
+                continue;
+            }
+            queued.decrementAndGet();
+            Outcome outcome = send(p);
+            if (outcome == Outcome.SENT) continue;
+            inflightPermits.release();
+            if (outcome == Outcome.BUSY) {
+                // Ningún cliente admite más ahora: se reintenta con el siguiente ACK
+                queued.incrementAndGet();
+                waiting.addFirst(p);
+                return;
+            }
+        }
+    }
+
+    private void onPublishDone() {
+        inflightPermits.release();
+        drain();
+    }
+
+    private Outcome send(Pending p) {
+        Slot[] current = slots;
+        boolean busy = false;
+        for (int attempt = 0; attempt < Math.max(1, current.length); attempt++) {
+            Slot slot = pick();
+            if (slot == null) break;
+            long start = System.nanoTime();
+            try {
+                slot.client.publish(p.topic, p.message, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        long elapsed = System.nanoTime() - start;
+                        published.incrementAndGet();
+                        ackNanosTotal.addAndGet(elapsed);
+                        ackNanosMax.accumulateAndGet(elapsed, Math::max);
+                        p.result.complete(null);
+                        onPublishDone();
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable cause) {
+                        failed.incrementAndGet();
+                        Log.logmqtt.warn("Publish to " + p.topic + " failed: " + cause);
+                        p.result.completeExceptionally(cause);
+                        onPublishDone();
+                    }
+                });
+                return Outcome.SENT;
+            } catch (MqttException e) {
+                if (e.getReasonCode() == MqttException.REASON_CODE_MAX_INFLIGHT) {
+                    // Este cliente está lleno (p. ej. el otro está desconectado): probar el siguiente
+                    busy = true;
+                    continue;
+                }
+                failed.incrementAndGet();
+                Log.logmqtt.warn("Publish to " + p.topic + " rejected: " + e);
+                p.result.completeExceptionally(e);
+                return Outcome.FAILED;
+            }
+        }
+        if (busy) return Outcome.BUSY;
+        failed.incrementAndGet();
+        p.result.completeExceptionally(new IllegalStateException("No MQTT publisher connected"));
+        return Outcome.FAILED;
+    }
+
+    /**
+     * Siguiente cliente conectado en round robin; los desconectados que no
+     * estén ya conectándose lanzan un nuevo intento.
+     */
+    private Slot pick() {
+        Slot[] current = slots;
+        if (!running || current.length == 0) return null;
+        int start = Math.floorMod(next.getAndIncrement(), current.length);
+        for (int i = 0; i < current.length; i++) {
+            Slot slot = current[(start + i) % current.length];
+            if (slot.client == null) continue;
+            if (slot.client.isConnected()) return slot;
+            slot.connect();
+        }
+        return null;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        s.put("running", running);
+        s.put("clients", size);
+        List<Boolean> connected = new ArrayList<>();
+        List<Integer> inflight = new ArrayList<>();
+        for (Slot slot : slots) {
+            connected.add(slot.client != null && slot.client.isConnected());
+            inflight.add(slot.client != null ? slot.client.getInFlightMessageCount() : 0);
+        }
+        s.put("connected", connected);
+        s.put("inflight", inflight);
+        s.put("capacity", capacity());
+        s.put("queued", Math.max(0, queued.get()));
+        s.put("published", published.get());
+        s.put("failed", failed.get());
+        long n = published.get();
+        s.put("avgAckMs", n == 0 ? 0.0 : ackNanosTotal.get() / 1e6 / n);
+        s.put("maxAckMs", ackNanosMax.get() / 1e6);
+        return s;
+    }
+
+    // ===================== Cliente del pool =====================
+
+    private final class Slot {
+        final MqttAsyncClient client;
+        final AtomicBoolean connecting = new AtomicBoolean();
+
+        Slot(MqttAsyncClient client) {
+            this.client = client;
+        }
+
+        IMqttToken connect() {
+            if (client == null || !running || client.isConnected() || !connecting.compareAndSet(false, true)) return null;
+            MqttConnectOptions opts = new MqttConnectOptions();
+            opts.setUserName(MQTTBroker.getUsername());
+            opts.setPassword(MQTTBroker.getPassword().toCharArray());
+            opts.setCleanSession(true);
+            opts.setAutomaticReconnect(true);     // tras la primera conexión, Paho reconecta solo
+            opts.setConnectionTimeout(10);
+            opts.setMaxInflight(maxInflight);
+            try {
+                return client.connect(opts, null, new IMqttActionListener() {
+                    @Override
+                    public void onSuccess(IMqttToken token) {
+                        connecting.set(false);
+                        Log.logmqtt.info("MQTT publisher " + client.getClientId() + " connected");
+                    }
+
+                    @Override
+                    public void onFailure(IMqttToken token, Throwable cause) {
+                        connecting.set(false);
+                        Log.logmqtt.warn("MQTT publisher " + client.getClientId() + " could not connect: " + cause);
+                    }
+                });
+            } catch (MqttException e) {
+                connecting.set(false);
+                Log.logmqtt.warn("MQTT publisher " + client.getClientId() + " could not connect: " + e);
+                return null;
+            }
+        }
+
+        void close() {
+            if (client == null) return;
+            try {
+                if (client.isConnected()) {
+                    client.disconnect().waitForCompletion(TimeUnit.SECONDS.toMillis(2));
+                }
+                client.close();
+            } catch (MqttException e) {
+                Log.logmqtt.warn("Error closing MQTT publisher " + client.getClientId() + ": " + e);
+            }
+        }
+    }
+}
@@ -3,9 +3,7 @@ package mqtt;
 import org.eclipse.paho.client.mqttv3.*;
 import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 
-import Database.Topics;
 import logic.Log;
-import logic.Logic;
 
 public class MQTTSuscriber implements MqttCallback {
 
@@ -52,20 +50,11 @@ public class MQTTSuscriber implements MqttCallback {
 
     @Override
     public void messageArrived(String topic, MqttMessage message) {
-        String payload = message.toString();
-        Log.logmqtt.info("Message arrived. Topic: {} Payload: {}", topic, payload);
+        Log.logmqtt.debug("Message arrived. Topic: {} Bytes: {}", topic, message.getPayload().length);
 
-        // Guardamos el último valor en un objeto Topics (por si quieres usarlo después)
-        Topics newTopic = new Topics();
-        newTopic.setIdTopic(topic);
-        newTopic.setValue(payload);
-
-        try {
-            // Inserta en la tabla "informacion" usando el JSON
-            Logic.insertFromMqttJson(payload);
-        } catch (Exception e) {
-            Log.logmqtt.error("Error processing MQTT message and inserting into DB", e);
-        }
+        // No se hace trabajo de BD en el hilo de Paho: el router decide por el
+        // topic (sin parsear) y los mensajes de estado pasan a su carril de ingesta
+        TopicRouter.getInstance().route(topic, message.getPayload());
     }
 
     @Override
@@ -0,0 +1,106 @@
+package mqtt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import logic.Log;
+
+/**
+ * Reparto de los mensajes de sensors/# por canal, antes de decodificar nada.
+ *
+ * Los topics siguen sensors/&lt;calle&gt;/&lt;tipo&gt;/&lt;dispositivo&gt;/&lt;canal&gt;:
+ *  - state → ingesta (IngestionDispatcher)
+ *  - cmd   → se ignora: son los comandos que publica el propio servidor y
+ *            nos llegan de vuelta por la suscripción a sensors/#
+ *  - resto → se descarta y se cuenta como "unmatched"
+ *
+ * Los patrones se compilan una vez en niveles y se comparan sobre el topic
+ * sin partirlo ni usar expresiones regulares.
+ */
+public class TopicRouter {
+
+    private static final TopicRouter INSTANCE = new TopicRouter();
+
+    private final Route[] routes = {
+        new Route("state", "sensors/+/+/+/state",
+                  (topic, payload) -> IngestionDispatcher.getInstance().dispatch(topic, payload)),
+        new Route("cmd", "sensors/+/+/+/cmd", (topic, payload) -> { }),
+    };
+    private final AtomicLong unmatched = new AtomicLong();
+
+    private TopicRouter() {}
+
+    public static TopicRouter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Entrega el mensaje a la primera ruta cuyo patrón encaje con el topic.
+     *
+     * @return false si ninguna ruta lo acepta
+     */
+    public boolean route(String topic, byte[] payload) {
+        for (Route r : routes) {
+            if (r.pattern.matches(topic)) {
+                r.count.incrementAndGet();
+                r.handler.accept(topic, payload);
+                return true;
+            }
+        }
+        unmatched.incrementAndGet();
+        Log.logmqtt.debug("No route for topic {}, message dropped", topic);
+        return false;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> s = new LinkedHashMap<>();
+        for (Route r : routes) s.put(r.name, r.count.get());
+        s.put("unmatched", unmatched.get());
+        return s;
+    }
+
+    // ===================== Rutas =====================
+
+    private static final class Route {
+        final String name;
+        final TopicPattern pattern;
+        final BiConsumer<String, byte[]> handler;
+        final AtomicLong count = new AtomicLong();
+
+        Route(String name, String filter, BiConsumer<String, byte[]> handler) {
+            this.name = name;
+            this.pattern = new TopicPattern(filter);
+            this.handler = handler;
+        }
+    }
+
+    /**
+     * Filtro MQTT precompilado: niveles literales, '+' (un nivel) y '#' (resto).
+     */
+    static final class TopicPattern {
+        private final String[] levels;
+
+        TopicPattern(String filter) {
+            this.levels = filter.split("/", -1);
+        }
+
+        boolean matches(String topic) {
+            int n = topic.length();
+            int pos = 0;
+            for (String level : levels) {
+                if (level.equals("#")) return true;
+                if (pos > n) return false;          // el topic tiene menos niveles
+                int end = topic.indexOf('/', pos);
+                if (end < 0) end = n;
+                if (!level.equals("+")
+                        && (end - pos != level.length() || !topic.regionMatches(pos, level, 0, level.length()))) {
+                    return false;
+                }
+                pos = end + 1;
+            }
+            return pos == n + 1;                    // sin niveles de sobra
+        }
+    }
+}
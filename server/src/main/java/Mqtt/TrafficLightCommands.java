@@ -0,0 +1,76 @@
+package mqtt;
+
+import java.util.concurrent.CompletableFuture;
+
+import logic.CommandTracker;
+
+/**
+ * Comandos que el servidor envía a los semáforos por
+ * sensors/&lt;calle&gt;/traffic_light/TL_xxx/cmd.
+ *
+ * - force  → { "force": "ped_green" }  fuerza el paso de peatones
+ * - buzzer → { "buzzer": true|false }   activa/desactiva el buzzer
+ */
+public class TrafficLightCommands {
+
+    public static final String FORCE = "force";
+    public static final String BUZZER = "buzzer";
+
+    // Espera máxima al ACK del broker antes de dar un comando por fallido
+    public static final long PUBLISH_TIMEOUT_MS = Long.getLong("ubicomp.mqtt.publishTimeoutMs", 5000L);
+
+    private TrafficLightCommands() {}
+
+    /**
+     * Acción soportada correspondiente al parámetro (force por defecto).
+     */
+    public static String normalizeAction(String action) {
+        return BUZZER.equals(action) ? BUZZER : FORCE;
+    }
+
+    /**
+     * @param cid id de correlación; el ESP32 ignora la clave, solo sirve para
+     *            identificar el comando en los logs y en CommandTracker
+     */
+    public static String payload(String action, boolean enabled, String cid) {
+        String id = cid != null ? ", \"cid\": \"" + cid + "\"" : "";
+        if (BUZZER.equals(action)) {
+            return "{ \"buzzer\": " + (enabled ? "true" : "false") + id + " }";
+        }
+        return "{ \"force\": \"ped_green\"" + id + " }";
+    }
+
+    /**
+     * Envía el comando al semáforo. Los force se apuntan en CommandTracker
+     * para medir cuánto tarda en verse el cambio; si la publicación falla se
+     * retiran.
+     */
+    public static CompletableFuture<Void> send(String action, boolean enabled, String streetId, int deviceId, String cid) {
+        String topic = MQTTBroker.getCommandTopic(streetId, deviceId);
+        String payload = payload(action, enabled, cid);
+        boolean tracked = FORCE.equals(action) && cid != null;
+        if (tracked) {
+            CommandTracker.getInstance().track(cid, action, streetId, deviceId);
+        }
+        CompletableFuture<Void> result = publish(action, topic, payload);
+        if (tracked) {
+            result.whenComplete((ok, error) -> {
+                if (error != null) CommandTracker.getInstance().cancel(cid, deviceId);
+            });
+        }
+        return result;
+    }
+
+    /**
+     * Publica con el pool persistente (QoS del tipo de comando). Si el pool
+     * no está arrancado, se publica con una conexión de un solo uso.
+     */
+    private static CompletableFuture<Void> publish(String action, String topic, String payload) {
+        MQTTPublisherPool pool = MQTTPublisherPool.getInstance();
+        if (pool.isRunning()) {
+            return pool.publish(topic, payload, pool.qosFor(action));
+        }
+        MQTTPublisher.publish(new MQTTBroker(), topic, payload);
+        return CompletableFuture.completedFuture(null);
+    }
+}
@@ -0,0 +1,120 @@
+package servlets;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.Log;
+import logic.RequestDeadline;
+import logic.RequestExecutor;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Paso a modo asíncrono común a los servlets de consulta y a SetData.
+ *
+ * La petición se suelta del hilo de Tomcat con startAsync() y el trabajo
+ * bloqueante se hace en RequestExecutor con un RequestDeadline. Si el cliente
+ * se desconecta (onError) la petición se cancela igual que al vencer el plazo.
+ * El timeout del AsyncContext es el plazo más un margen y solo salta si el
+ * trabajo no responde a la cancelación; entonces se contesta 503 si aún se puede.
+ *
+ * Si el ejecutor no está arrancado, la petición se atiende en el propio hilo
+ * de Tomcat, como antes; si está saturado, se responde 503.
+ */
+final class AsyncRequests {
+
+    // Margen para que el trabajo cancelado escriba su respuesta
+    private static final long GRACE_MS = 5000;
+
+    interface Handler {
+        void handle(HttpServletRequest request, HttpServletResponse response) throws IOException;
+    }
+
+    private AsyncRequests() {}
+
+    static void run(HttpServletRequest request, HttpServletResponse response, Handler handler) throws IOException {
+        run(request, response, RequestExecutor.getInstance().deadlineMillis(), handler);
+    }
+
+    static void run(HttpServletRequest request, HttpServletResponse response, long deadlineMillis, Handler handler)
+            throws IOException {
+        RequestExecutor executor = RequestExecutor.getInstance();
+        if (!request.isAsyncSupported() || !executor.isRunning()) {
+            handler.handle(request, response);
+            return;
+        }
+
+        RequestDeadline deadline = new RequestDeadline(deadlineMillis);
+        AsyncContext ctx = request.startAsync(request, response);
+        ctx.setTimeout(deadlineMillis + GRACE_MS);
+        // Quien lo ponga a true completa la petición
+        AtomicBoolean finished = new AtomicBoolean(false);
+
+        ctx.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                executor.cancel(deadline, RequestDeadline.TIMEOUT);
+                if (finished.compareAndSet(false, true)) {
+                    Log.log.warn("Request " + request.getRequestURI() + " did not finish within its deadline");
+                    if (!response.isCommitted()) response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    ctx.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                executor.cancel(deadline, RequestDeadline.DISCONNECTED);
+                if (finished.compareAndSet(false, true)) ctx.complete();
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        Runnable work = () -> {
+            try {
+                handler.handle(request, response);
+            } catch (IOException e) {
+                // Normalmente el cliente ha cortado la conexión
+                executor.cancel(deadline, RequestDeadline.DISCONNECTED);
+                Log.log.warn("I/O error answering " + request.getRequestURI() + ": " + e);
+            } catch (RuntimeException e) {
+                Log.log.error("Exception answering " + request.getRequestURI() + ": ", e);
+                if (!response.isCommitted()) response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            } finally {
+                if (finished.compareAndSet(false, true)) ctx.complete();
+            }
+        };
+
+        try {
+            executor.execute(deadline, work);
+        } catch (RejectedExecutionException e) {
+            Log.log.warn("Request " + request.getRequestURI() + " rejected: " + e.getMessage());
+            if (finished.compareAndSet(false, true)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                ctx.complete();
+            }
+        }
+    }
+
+    /**
+     * Para los catch genéricos de los servlets: true si la petición del hilo
+     * actual se ha cancelado o ha vencido, y el error (p. ej. la SQLException
+     * de una sentencia cancelada) viene de ahí y se responde con 503.
+     */
+    static boolean cancelled(Exception e) {
+        if (e instanceof CancellationException) return true;
+        RequestDeadline deadline = RequestDeadline.current();
+        return deadline != null && (deadline.isCancelled() || deadline.remainingMillis() <= 0);
+    }
+}
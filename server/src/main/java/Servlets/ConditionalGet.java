@@ -0,0 +1,56 @@
+package servlets;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Validación de peticiones condicionales (If-None-Match / If-Modified-Since)
+ * para respuestas cacheables por el cliente.
+ */
+final class ConditionalGet {
+
+    private ConditionalGet() {}
+
+    /**
+     * Pone ETag y Last-Modified en la respuesta y, si la copia del cliente
+     * sigue siendo válida, responde 304 sin cuerpo.
+     *
+     * @return true si ya se ha respondido 304
+     */
+    static boolean notModified(HttpServletRequest request, HttpServletResponse response,
+                               String etag, long lastModified) {
+        response.setHeader("ETag", etag);
+        // El cliente puede guardar la respuesta pero debe revalidarla siempre
+        response.setHeader("Cache-Control", "no-cache");
+        if (lastModified > 0) response.setDateHeader("Last-Modified", lastModified);
+
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        boolean fresh;
+        if (ifNoneMatch != null) {
+            // If-Modified-Since se ignora cuando viene If-None-Match
+            fresh = matches(ifNoneMatch, etag);
+        } else {
+            long since = -1;
+            try {
+                since = request.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException ignored) {
+                // fecha mal formada: se responde completo
+            }
+            fresh = since > 0 && lastModified > 0 && lastModified <= since;
+        }
+        if (fresh) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        }
+        return fresh;
+    }
+
+    private static boolean matches(String ifNoneMatch, String etag) {
+        for (String tag : ifNoneMatch.split(",")) {
+            String t = tag.trim();
+            if (t.equals("*")) return true;
+            if (t.startsWith("W/")) t = t.substring(2);
+            if (t.equals(etag)) return true;
+        }
+        return false;
+    }
+}
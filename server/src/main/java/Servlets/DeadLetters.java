@@ -0,0 +1,149 @@
+package servlets;
+
+import Database.DeadLetterStore;
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.DecodeResult;
+import logic.Log;
+import logic.Logic;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consulta y reproceso de la cuarentena de telemetría (`informacion_dead_letter`).
+ *
+ * - GET  /DeadLetters?limit=&before=&reason=&all=true  lista (más recientes primero)
+ * - POST /DeadLetters?action=replay[&ids=1,2,3][&limit=]  vuelve a decodificar e
+ *   insertar los indicados (o los más antiguos pendientes)
+ *
+ * El reproceso escribe en la base de datos, así que solo se acepta por POST.
+ */
+@WebServlet(value = "/DeadLetters", asyncSupported = true)
+public class DeadLetters extends HttpServlet {
+
+    private static final int MAX_LIMIT = 500;
+
+    private static final Gson GSON = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (request.getParameter("action") != null) {
+            response.setHeader("Allow", "POST");
+            response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Actions require POST");
+            return;
+        }
+        AsyncRequests.run(request, response, this::list);
+    }
+
+    private void list(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        try {
+            int limit = limit(request, 50);
+            Long before = parseLong(request.getParameter("before"), "before");
+            String reason = request.getParameter("reason");
+            if (reason != null && !reason.isBlank()) {
+                reason = DecodeResult.valueOf(reason.trim().toUpperCase()).name();
+            } else {
+                reason = null;
+            }
+            boolean all = "true".equalsIgnoreCase(request.getParameter("all"));
+
+            List<Map<String, Object>> items = new ArrayList<>();
+            for (DeadLetterStore.DeadLetter d : DeadLetterStore.getInstance().list(limit, before, reason, all)) {
+                Map<String, Object> m = new LinkedHashMap<>();
+                m.put("id", d.id);
+                m.put("receivedAt", String.valueOf(d.receivedAt));
+                m.put("topic", d.topic);
+                m.put("reason", d.reason);
+                m.put("detail", d.detail);
+                m.put("payload", d.payload != null ? new String(d.payload, StandardCharsets.UTF_8) : null);
+                m.put("payloadBase64", d.payload != null ? Base64.getEncoder().encodeToString(d.payload) : null);
+                m.put("replayedAt", d.replayedAt != null ? d.replayedAt.toString() : null);
+                items.add(m);
+            }
+            out.println(GSON.toJson(items));
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Log.log.warn("Invalid parameters in DeadLetters: " + e.getMessage());
+            out.println("[]");
+        } catch (Exception e) {
+            if (AsyncRequests.cancelled(e)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                Log.log.warn("DeadLetters cancelled: " + e.getMessage());
+            } else {
+                Log.log.error("Exception in DeadLetters: ", e);
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            out.println("[]");
+        } finally {
+            out.close();
+        }
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if ("replay".equals(request.getParameter("action"))) {
+            AsyncRequests.run(request, response, this::replay);
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown action");
+        }
+    }
+
+    private void replay(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        try {
+            List<Long> ids = new ArrayList<>();
+            String idsParam = request.getParameter("ids");
+            if (idsParam != null) {
+                for (String part : idsParam.split(",")) {
+                    if (!part.isBlank()) ids.add(parseLong(part, "ids"));
+                }
+            }
+            int limit = ids.isEmpty() ? limit(request, 100) : Math.min(ids.size(), MAX_LIMIT);
+            Map<String, Object> summary = Logic.replayDeadLetters(ids, limit);
+            Log.log.info("[DeadLetters] replay => " + summary.get("replayed"));
+            out.println(GSON.toJson(summary));
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.println("{\"error\":\"" + e.getMessage() + "\"}");
+        } catch (Exception e) {
+            if (AsyncRequests.cancelled(e)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                Log.log.warn("DeadLetters replay cancelled: " + e.getMessage());
+            } else {
+                Log.log.error("Exception replaying dead letters: ", e);
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            out.println("{}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int limit(HttpServletRequest request, int def) {
+        Long limit = parseLong(request.getParameter("limit"), "limit");
+        if (limit == null || limit <= 0) return def;
+        return (int) Math.min(limit, MAX_LIMIT);
+    }
+
+    private static Long parseLong(String value, String name) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package servlets;
+
+import Database.ConectionDDBB;
+import Database.RollupStore;
+import Database.RollupStore.Counters;
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.Log;
+import logic.SingleFlight;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agregados por minuto u hora de un dispositivo o una calle, leídos de
+ * `informacion_rollup` (nunca de las filas crudas).
+ *
+ * GET /GetAggregates?deviceId=<id>|streetId=<id>&granularity=minute|hour&start=<...>&end=<...>
+ *
+ * start y end aceptan yyyy-MM-dd o yyyy-MM-ddTHH:mm[:ss]; por defecto, el día
+ * de hoy. El intervalo es [start, end) y no puede superar
+ * ubicomp.aggregates.maxBuckets cubos (10000).
+ */
+@WebServlet(value = "/GetAggregates", asyncSupported = true)
+public class GetAggregates extends HttpServlet {
+
+    private static final int MAX_BUCKETS = Integer.getInteger("ubicomp.aggregates.maxBuckets", 10000);
+
+    private static final SingleFlight<String> FLIGHTS = SingleFlight.named("aggregates");
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::handle);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+
+        try {
+            String deviceId = request.getParameter("deviceId");
+            String streetId = request.getParameter("streetId");
+            boolean byDevice = deviceId != null && !deviceId.isBlank();
+            if (byDevice == (streetId != null && !streetId.isBlank())) {
+                throw new IllegalArgumentException("Exactly one of deviceId or streetId is required");
+            }
+            String id = byDevice ? String.valueOf(Integer.parseInt(deviceId.trim())) : streetId.trim();
+
+            String granularityParam = request.getParameter("granularity");
+            boolean minute = "minute".equalsIgnoreCase(granularityParam);
+            if (!minute && granularityParam != null && !granularityParam.isBlank()
+                    && !"hour".equalsIgnoreCase(granularityParam)) {
+                throw new IllegalArgumentException("Invalid granularity: " + granularityParam);
+            }
+
+            LocalDateTime start = parse(request.getParameter("start"), LocalDate.now().atStartOfDay());
+            LocalDateTime end = parse(request.getParameter("end"), start.toLocalDate().plusDays(1).atStartOfDay());
+            if (!end.isAfter(start)) {
+                throw new IllegalArgumentException("end must be after start");
+            }
+            long buckets = minute ? Duration.between(start, end).toMinutes() : Duration.between(start, end).toHours();
+            if (buckets > MAX_BUCKETS) {
+                throw new IllegalArgumentException("Range too large: " + buckets + " buckets (max " + MAX_BUCKETS + ")");
+            }
+            char granularity = minute ? RollupStore.MINUTE : RollupStore.HOUR;
+            LocalDateTime from = start.truncatedTo(minute ? ChronoUnit.MINUTES : ChronoUnit.HOURS);
+
+            // Las peticiones idénticas simultáneas comparten consulta y JSON
+            String key = (byDevice ? RollupStore.DEVICE : RollupStore.STREET) + "|" + id
+                    + "|" + granularity + "|" + from + "|" + end;
+            out.println(FLIGHTS.execute(key, () -> query(byDevice, id, minute, granularity, from, end)));
+
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Log.log.warn("Invalid parameters in GetAggregates: " + e.getMessage());
+            out.println("{}");
+        } catch (Exception e) {
+            if (AsyncRequests.cancelled(e)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                Log.log.warn("GetAggregates cancelled: " + e.getMessage());
+            } else {
+                Log.log.error("Exception in GetAggregates: ", e);
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            out.println("{}");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String query(boolean byDevice, String id, boolean minute, char granularity,
+                                LocalDateTime from, LocalDateTime end) throws SQLException {
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            con = conector.obtainReadConnection();
+            Counters totals = new Counters();
+            List<Map<String, Object>> rows = RollupStore.query(con, granularity,
+                    byDevice ? RollupStore.DEVICE : RollupStore.STREET, id, from, end, totals);
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put(byDevice ? "deviceId" : "streetId", id);
+            body.put("granularity", minute ? "minute" : "hour");
+            body.put("start", from.toString());
+            body.put("end", end.toString());
+            body.put("totals", totals.toMap());
+            body.put("buckets", rows);
+            return new Gson().toJson(body);
+        } finally {
+            conector.closeConnection(con);
+        }
+    }
+
+    /** yyyy-MM-dd o yyyy-MM-ddTHH:mm[:ss]; {@code fallback} si viene vacío. */
+    static LocalDateTime parse(String value, LocalDateTime fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        String s = value.trim().replace(' ', 'T');
+        if (s.length() == 10) return LocalDate.parse(s).atStartOfDay();
+        return LocalDateTime.parse(s);
+    }
+}
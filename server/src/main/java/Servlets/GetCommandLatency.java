@@ -0,0 +1,43 @@
+package servlets;
+
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.CommandTracker;
+import logic.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Latencia comando → efecto de los force enviados (global, por calle y por
+ * dispositivo) y comandos pendientes o caducados sin efecto.
+ */
+@WebServlet("/GetCommandLatency")
+public class GetCommandLatency extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        try {
+            CommandTracker tracker = CommandTracker.getInstance();
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("latency", tracker.latency());
+            body.put("byStreet", tracker.latencyByStreet());
+            body.put("byDevice", tracker.latencyByDevice());
+            body.put("pending", tracker.pendingCommands());
+            body.put("timedOut", tracker.timedOutCommands());
+            out.println(new Gson().toJson(body));
+        } catch (Exception e) {
+            Log.log.error("Exception in GetCommandLatency: ", e);
+            out.println("{}");
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -3,7 +3,7 @@ package servlets;
 import com.google.gson.Gson;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -13,12 +13,13 @@ import jakarta.servlet.http.HttpServletResponse;
 
 import logic.Log;
 import logic.Logic;
-import logic.Measurement;
+import logic.MeasurementPage;
+import logic.RequestExecutor;
 
 /**
  * Servlet implementation class GetData
  */
-@WebServlet("/GetData")
+@WebServlet(value = "/GetData", asyncSupported = true)
 public class GetData extends HttpServlet {
 	private static final long serialVersionUID = 1L;
        
@@ -34,18 +35,33 @@ public class GetData extends HttpServlet {
      */
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         Log.log.info("--Set new value into the DB--");
+        if (MeasurementStream.requested(request)) {
+            AsyncRequests.run(request, response, RequestExecutor.getInstance().streamDeadlineMillis(),
+                    (req, resp) -> MeasurementStream.write(resp, null, null, null, null, false));
+            return;
+        }
+        AsyncRequests.run(request, response, this::handle);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType("application/json;charset=UTF-8");
         PrintWriter out = response.getWriter();
         try 
         {
-            ArrayList<Measurement> values =Logic.getDataFromDB();
-            String jsonMeasurements = new Gson().toJson(values);
-            Log.log.info("Values=>" + jsonMeasurements);
-            out.println(jsonMeasurements);
-        } catch (NumberFormatException nfe) 
+            PageParams page = PageParams.from(request);
+            MeasurementPage values = Logic.getDataPage(page.cursor, page.limit);
+            Log.log.info("Values=> " + values.getItems().size() + " rows, nextCursor=" + values.getNextCursor());
+            out.println(page.toJson(values, response, new Gson()));
+        } catch (IllegalArgumentException iae) 
+        {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.println("-1");
+            Log.log.warn("Invalid paging parameters: " + iae.getMessage());
+        } catch (CancellationException ce) 
         {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
             out.println("-1");
-            Log.log.error("Number Format Exception: " + nfe);
+            Log.log.warn("GetData cancelled: " + ce.getMessage());
         } catch (IndexOutOfBoundsException iobe) 
         {
             out.println("-1");
@@ -7,47 +7,87 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import logic.Log;
 import logic.Logic;
-import logic.Measurement;
+import logic.RequestExecutor;
+import logic.SingleFlight;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
-@WebServlet("/GetDataFiltered")
+@WebServlet(value = "/GetDataFiltered", asyncSupported = true)
 public class GetDataFiltered extends HttpServlet {
 
+    private static final SingleFlight<PageParams.Body> FLIGHTS = SingleFlight.named("filtered");
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long deadline = MeasurementStream.requested(request)
+                ? RequestExecutor.getInstance().streamDeadlineMillis()
+                : RequestExecutor.getInstance().deadlineMillis();
+        AsyncRequests.run(request, response, deadline, this::handle);
+    }
 
-        response.setContentType("application/json;charset=UTF-8");
-        PrintWriter out = response.getWriter();
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
 
-        try {
-            String streetId = firstNonEmpty(
-                    request.getParameter("streetId"),
-                    request.getParameter("street")      
-            );
+        String streetId = firstNonEmpty(
+                request.getParameter("streetId"),
+                request.getParameter("street")
+        );
+
+        String deviceParam = firstNonEmpty(
+                request.getParameter("device"),
+                request.getParameter("deviceId")
+        );
+
+        String startParam = firstNonEmpty(
+                request.getParameter("startDate"),
+                request.getParameter("start")
+        );
 
-            String deviceParam = firstNonEmpty(
-                    request.getParameter("device"),
-                    request.getParameter("deviceId")
-            );
+        String endParam = firstNonEmpty(
+                request.getParameter("endDate"),
+                request.getParameter("end")
+        );
 
-            String startParam = firstNonEmpty(
-                    request.getParameter("startDate"),
-                    request.getParameter("start")
-            );
+        // Añade la última fila anterior al inicio de cada dispositivo (estado vigente al empezar)
+        String fillParam = request.getParameter("fill");
+        boolean fill = "true".equalsIgnoreCase(fillParam) || "1".equals(fillParam);
 
-            String endParam = firstNonEmpty(
-                    request.getParameter("endDate"),
-                    request.getParameter("end")
-            );
+        // Exportación completa sin paginar, escrita fila a fila
+        if (MeasurementStream.requested(request)) {
+            MeasurementStream.write(response, streetId, deviceParam, startParam, endParam, fill);
+            return;
+        }
 
-            ArrayList<Measurement> values =
-                    Logic.getDataFromDBFiltered(streetId, deviceParam, startParam, endParam);
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
 
-            out.println(new Gson().toJson(values));
+        try {
+            PageParams page = PageParams.from(request);
+            String key;
+            try {
+                key = Logic.filteredPageKey(streetId, deviceParam, startParam, endParam, fill, page.cursor, page.limit)
+                        + '|' + page.envelope;
+            } catch (IllegalArgumentException e) {
+                // Filtros no válidos: Logic devuelve la página vacía de siempre, sin agrupar
+                key = null;
+            }
+            Callable<PageParams.Body> query = () -> page.serialize(Logic.getDataFromDBFilteredPage(
+                    streetId, deviceParam, startParam, endParam, fill, page.cursor, page.limit), new Gson());
 
+            // Las peticiones idénticas simultáneas comparten consulta y JSON
+            PageParams.Body body = key == null ? query.call() : FLIGHTS.execute(key, query);
+            page.write(body, response, out);
+
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Log.log.warn("Invalid paging parameters in GetDataFiltered: " + e.getMessage());
+            out.println("[]");
+        } catch (CancellationException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            Log.log.warn("GetDataFiltered cancelled: " + e.getMessage());
+            out.println("[]");
         } catch (Exception e) {
             Log.log.error("Exception in GetDataFiltered: ", e);
             out.println("[]");
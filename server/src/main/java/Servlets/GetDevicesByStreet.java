@@ -1,40 +1,48 @@
 package servlets;
 
-import com.google.gson.Gson;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import logic.Log;
-import logic.Logic;
+import logic.StreetCatalog;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 
-@WebServlet("/GetDevicesByStreet")
+@WebServlet(value = "/GetDevicesByStreet", asyncSupported = true)
 public class GetDevicesByStreet extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::handle);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType("application/json;charset=UTF-8");
-        PrintWriter out = response.getWriter();
 
         String streetId = request.getParameter("streetId");
         if (streetId == null || streetId.isBlank()) {
             response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            PrintWriter out = response.getWriter();
             out.println("[]");
             out.close();
             return;
         }
 
         try {
-            ArrayList<Integer> devices = Logic.getDevicesByStreetFromDB(streetId);
-            out.println(new Gson().toJson(devices));
+            StreetCatalog catalog = StreetCatalog.getInstance();
+            StreetCatalog.Body devices = catalog.devicesByStreet(streetId);
+            if (ConditionalGet.notModified(request, response, devices.etag, catalog.lastModified())) {
+                return;
+            }
+            PrintWriter out = response.getWriter();
+            out.println(devices.json);
+            out.close();
         } catch (Exception e) {
             Log.log.error("Exception in GetDevicesByStreet: ", e);
+            PrintWriter out = response.getWriter();
             out.println("[]");
-        } finally {
             out.close();
         }
     }
@@ -0,0 +1,61 @@
+package servlets;
+
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.LatestStateCache;
+import logic.Log;
+import logic.Measurement;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+
+/**
+ * Estado actual (última medición) de los semáforos, servido desde memoria.
+ *
+ * - deviceId → ese dispositivo
+ * - streetId → todos los de la calle
+ * - sin parámetros → todos
+ *
+ * Devuelve siempre un array JSON con el mismo formato que GetDataFiltered.
+ */
+@WebServlet("/GetLatestState")
+public class GetLatestState extends HttpServlet {
+
+    private static final Gson GSON = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+
+        try {
+            String deviceParam = request.getParameter("deviceId");
+            String streetId = request.getParameter("streetId");
+            LatestStateCache cache = LatestStateCache.getInstance();
+
+            ArrayList<Measurement> values;
+            if (deviceParam != null && !deviceParam.isBlank()) {
+                values = new ArrayList<>();
+                Measurement m = cache.getDevice(Integer.parseInt(deviceParam.trim()));
+                if (m != null) values.add(m);
+            } else {
+                values = cache.getStreet(streetId == null || streetId.isBlank() ? null : streetId.trim());
+            }
+            out.println(GSON.toJson(values));
+
+        } catch (NumberFormatException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Log.log.warn("Invalid deviceId in GetLatestState: " + e.getMessage());
+            out.println("[]");
+        } catch (Exception e) {
+            Log.log.error("Exception in GetLatestState: ", e);
+            out.println("[]");
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package servlets;
+
+import Database.ConectionDDBB;
+import Database.DeadLetterStore;
+import Database.DeviceDAO;
+import Database.MeasurementBatchWriter;
+import Database.PartitionManager;
+import Database.WriteAheadSpool;
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.ChangeOnlyFilter;
+import logic.CommandTracker;
+import logic.DuplicateFilter;
+import logic.LatestStateCache;
+import logic.Log;
+import logic.QueryResultCache;
+import logic.RequestExecutor;
+import logic.RollupAggregator;
+import logic.SingleFlight;
+import logic.StreetCatalog;
+import logic.TransitionTracker;
+import mqtt.IngestionDispatcher;
+import mqtt.MQTTPublisherPool;
+import mqtt.TopicRouter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Métricas internas del servidor (ingesta, colas, latencias) en JSON.
+ */
+@WebServlet("/GetStats")
+public class GetStats extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("http", RequestExecutor.getInstance().stats());
+            stats.put("db", ConectionDDBB.stats());
+            stats.put("router", TopicRouter.getInstance().stats());
+            stats.put("dispatcher", IngestionDispatcher.getInstance().stats());
+            stats.put("dedup", DuplicateFilter.getInstance().stats());
+            stats.put("changeOnly", ChangeOnlyFilter.getInstance().stats());
+            stats.put("batchWriter", MeasurementBatchWriter.getInstance().stats());
+            stats.put("spool", WriteAheadSpool.getInstance().stats());
+            stats.put("deadLetters", DeadLetterStore.getInstance().stats());
+            stats.put("deviceRegistry", DeviceDAO.registryStats());
+            stats.put("partitions", PartitionManager.getInstance().stats());
+            stats.put("latestState", LatestStateCache.getInstance().stats());
+            stats.put("catalog", StreetCatalog.getInstance().stats());
+            stats.put("queryCache", QueryResultCache.getInstance().stats());
+            stats.put("singleFlight", SingleFlight.allStats());
+            stats.put("publisher", MQTTPublisherPool.getInstance().stats());
+            stats.put("commands", CommandTracker.getInstance().stats());
+            stats.put("rollups", RollupAggregator.getInstance().stats());
+            stats.put("transitions", TransitionTracker.getInstance().stats());
+            out.println(new Gson().toJson(stats));
+        } catch (Exception e) {
+            Log.log.error("Exception in GetStats: ", e);
+            out.println("{}");
+        } finally {
+            out.close();
+        }
+    }
+}
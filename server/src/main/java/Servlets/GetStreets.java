@@ -1,31 +1,38 @@
 package servlets;
 
-import com.google.gson.Gson;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import logic.Log;
-import logic.Logic;
+import logic.StreetCatalog;
 
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
 
-@WebServlet("/GetStreets")
+@WebServlet(value = "/GetStreets", asyncSupported = true)
 public class GetStreets extends HttpServlet {
 
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::handle);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
         response.setContentType("application/json;charset=UTF-8");
-        PrintWriter out = response.getWriter();
         try {
-            ArrayList<String> streets = Logic.getStreetsFromDB();
-            out.println(new Gson().toJson(streets));
+            StreetCatalog catalog = StreetCatalog.getInstance();
+            StreetCatalog.Body streets = catalog.streets();
+            if (ConditionalGet.notModified(request, response, streets.etag, catalog.lastModified())) {
+                return;
+            }
+            PrintWriter out = response.getWriter();
+            out.println(streets.json);
+            out.close();
         } catch (Exception e) {
             Log.log.error("Exception in GetStreets: ", e);
+            PrintWriter out = response.getWriter();
             out.println("[]");
-        } finally {
             out.close();
         }
     }
@@ -0,0 +1,98 @@
+package servlets;
+
+import Database.ConectionDDBB;
+import Database.TransitionStore;
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.Log;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Intervalos de estado de un dispositivo (tabla `informacion_transicion`) con
+ * el resumen de duraciones por estado y por fase (las tres fases de peatones
+ * se reportan como "red"; ver TransitionStore.phaseOf).
+ *
+ * GET /GetTransitions?deviceId=<id>&start=<...>&end=<...>&state=<estado>&limit=<n>
+ *
+ * start y end como en GetAggregates (por defecto, hoy); limit hasta
+ * ubicomp.transition.maxRows (10000).
+ */
+@WebServlet(value = "/GetTransitions", asyncSupported = true)
+public class GetTransitions extends HttpServlet {
+
+    private static final int MAX_ROWS = Integer.getInteger("ubicomp.transition.maxRows", 10000);
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::handle);
+    }
+
+    private void handle(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+
+        ConectionDDBB conector = new ConectionDDBB();
+        Connection con = null;
+        try {
+            String deviceParam = request.getParameter("deviceId");
+            if (deviceParam == null || deviceParam.isBlank()) {
+                throw new IllegalArgumentException("deviceId is required");
+            }
+            int deviceId = Integer.parseInt(deviceParam.trim());
+            String state = request.getParameter("state");
+            if (state != null && state.isBlank()) state = null;
+            String limitParam = request.getParameter("limit");
+            int limit = limitParam == null || limitParam.isBlank()
+                    ? MAX_ROWS : Math.max(1, Math.min(MAX_ROWS, Integer.parseInt(limitParam.trim())));
+
+            LocalDateTime start = GetAggregates.parse(request.getParameter("start"), LocalDate.now().atStartOfDay());
+            LocalDateTime end = GetAggregates.parse(request.getParameter("end"), start.toLocalDate().plusDays(1).atStartOfDay());
+
+            con = conector.obtainReadConnection();
+            Map<String, Map<String, Object>> summary = new TreeMap<>();
+            Map<String, Map<String, Object>> phases = new TreeMap<>();
+            List<Map<String, Object>> rows = TransitionStore.query(con, deviceId,
+                    Timestamp.valueOf(start), Timestamp.valueOf(end), state, limit, summary, phases);
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("deviceId", deviceId);
+            body.put("start", start.toString());
+            body.put("end", end.toString());
+            body.put("summary", summary);
+            body.put("phases", phases);
+            body.put("intervals", rows);
+            out.println(new Gson().toJson(body));
+
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            Log.log.warn("Invalid parameters in GetTransitions: " + e.getMessage());
+            out.println("{}");
+        } catch (Exception e) {
+            if (AsyncRequests.cancelled(e)) {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                Log.log.warn("GetTransitions cancelled: " + e.getMessage());
+            } else {
+                Log.log.error("Exception in GetTransitions: ", e);
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+            out.println("{}");
+        } finally {
+            conector.closeConnection(con);
+            out.close();
+        }
+    }
+}
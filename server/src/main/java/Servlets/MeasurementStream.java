@@ -0,0 +1,94 @@
+package servlets;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.Log;
+import logic.Logic;
+import logic.Measurement;
+import logic.RequestDeadline;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Modo streaming (?stream=true) de GetData y GetDataFiltered.
+ *
+ * Devuelve el histórico completo que cumple los filtros, sin paginar, como el
+ * array JSON de siempre pero escrito fila a fila con un JsonWriter sobre el
+ * OutputStream de la respuesta. Cada FLUSH_ROWS filas se vacía el buffer, así
+ * el cliente empieza a recibir datos enseguida y la memoria no depende del
+ * número de filas.
+ */
+final class MeasurementStream {
+
+    // Filas entre flush al cliente
+    private static final int FLUSH_ROWS = Integer.getInteger("ubicomp.stream.flushRows", 500);
+    private static final int BUFFER_BYTES = 32 * 1024;
+
+    private static final Gson GSON = new Gson();
+
+    private MeasurementStream() {}
+
+    static boolean requested(HttpServletRequest request) {
+        String stream = request.getParameter("stream");
+        return "true".equalsIgnoreCase(stream) || "1".equals(stream);
+    }
+
+    static void write(HttpServletResponse response,
+                      String streetId, String deviceParam, String startParam, String endParam,
+                      boolean fill)
+            throws IOException {
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setBufferSize(BUFFER_BYTES);
+        ServletOutputStream os = response.getOutputStream();
+        JsonWriter json = new JsonWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8));
+
+        long[] rows = {0};
+        try {
+            json.beginArray();
+            Logic.streamDataFromDBFiltered(streetId, deviceParam, startParam, endParam, fill, (Measurement m) -> {
+                GSON.toJson(m, Measurement.class, json);
+                if (++rows[0] % FLUSH_ROWS == 0) {
+                    json.flush();
+                }
+            });
+            json.endArray();
+            json.close();
+        } catch (IllegalArgumentException e) {
+            Log.log.warn("Invalid filter parameters in streaming request: " + e.getMessage());
+            fail(response, os, HttpServletResponse.SC_BAD_REQUEST);
+        } catch (IOException e) {
+            // Normalmente el cliente ha cortado la descarga
+            Log.log.warn("Streaming aborted after " + rows[0] + " rows: " + e);
+        } catch (Exception e) {
+            RequestDeadline deadline = RequestDeadline.current();
+            if (deadline != null && deadline.isCancelled()) {
+                Log.log.warn("Streaming cancelled after " + rows[0] + " rows: " + deadline.cancelReason());
+                fail(response, os, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+            Log.log.error("Exception while streaming after " + rows[0] + " rows: ", e);
+            fail(response, os, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Si aún no se ha enviado nada se responde con error y "[]"; si ya salieron
+     * filas solo se puede cortar la respuesta, que queda como JSON incompleto.
+     */
+    private static void fail(HttpServletResponse response, ServletOutputStream os, int status) throws IOException {
+        if (response.isCommitted()) {
+            os.close();
+            return;
+        }
+        response.resetBuffer();
+        response.setStatus(status);
+        os.write("[]".getBytes(StandardCharsets.UTF_8));
+        os.close();
+    }
+}
@@ -0,0 +1,91 @@
+package servlets;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.Logic;
+import logic.MeasurementPage;
+import logic.PageCursor;
+
+import com.google.gson.Gson;
+
+import java.io.PrintWriter;
+
+/**
+ * Parámetros de paginación comunes a GetData y GetDataFiltered.
+ *
+ * - limit:  filas por página (se limita a Logic.MAX_PAGE_SIZE)
+ * - cursor: nextCursor devuelto por la página anterior
+ *
+ * Si el cliente usa alguno de los dos, la respuesta es
+ * {"items":[...],"nextCursor":"..."}. Si no, se mantiene el array JSON de
+ * siempre (primera página) y el cursor siguiente va en la cabecera X-Next-Cursor.
+ */
+final class PageParams {
+
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    final PageCursor cursor;
+    final int limit;
+    final boolean envelope;
+
+    private PageParams(PageCursor cursor, int limit, boolean envelope) {
+        this.cursor = cursor;
+        this.limit = limit;
+        this.envelope = envelope;
+    }
+
+    /**
+     * @throws IllegalArgumentException si limit o cursor no son válidos
+     */
+    static PageParams from(HttpServletRequest request) {
+        String limitParam = request.getParameter("limit");
+        String cursorParam = request.getParameter("cursor");
+        Integer limit = null;
+        if (limitParam != null && !limitParam.isBlank()) {
+            try {
+                limit = Integer.parseInt(limitParam.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid limit: " + limitParam);
+            }
+        }
+        boolean envelope = limit != null || (cursorParam != null && !cursorParam.isBlank());
+        return new PageParams(PageCursor.decode(cursorParam), Logic.clampPageSize(limit), envelope);
+    }
+
+    /**
+     * Serializa la página en el formato que corresponda a la petición.
+     */
+    String toJson(MeasurementPage page, HttpServletResponse response, Gson gson) {
+        if (envelope) {
+            return gson.toJson(page);
+        }
+        if (page.getNextCursor() != null) {
+            response.setHeader(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        return gson.toJson(page.getItems());
+    }
+
+    /**
+     * Respuesta ya serializada, para compartirla entre peticiones idénticas.
+     */
+    static final class Body {
+        final String json;
+        final String nextCursor;
+
+        Body(String json, String nextCursor) {
+            this.json = json;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    Body serialize(MeasurementPage page, Gson gson) {
+        return new Body(envelope ? gson.toJson(page) : gson.toJson(page.getItems()), page.getNextCursor());
+    }
+
+    void write(Body body, HttpServletResponse response, PrintWriter out) {
+        if (!envelope && body.nextCursor != null) {
+            response.setHeader(NEXT_CURSOR_HEADER, body.nextCursor);
+        }
+        out.println(body.json);
+    }
+}
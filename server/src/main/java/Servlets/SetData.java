@@ -2,6 +2,8 @@ package servlets;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CancellationException;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -9,28 +11,29 @@ import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
+import logic.CommandTracker;
 import logic.Log;
+import logic.RequestDeadline;
 import mqtt.MQTTBroker;
-import mqtt.MQTTPublisher;
+import mqtt.TrafficLightCommands;
 
-@WebServlet("/SetData")
+@WebServlet(value = "/SetData", asyncSupported = true)
 public class SetData extends HttpServlet {
 
     private static final long serialVersionUID = 1L;
 
     // Si no se pasa streetId, usamos el de prácticas por defecto
     private static final String DEFAULT_STREET_ID = "ST_2245";
-
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        AsyncRequests.run(request, response, this::processRequest);
     }
 
     @Override
     protected void doPost(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
-        processRequest(request, response);
+        AsyncRequests.run(request, response, this::processRequest);
     }
 
     private void processRequest(HttpServletRequest request, HttpServletResponse response)
@@ -67,39 +70,26 @@ public class SetData extends HttpServlet {
         }
 
         // Topic dinámico por streetId + deviceId
-        String cmdTopic = String.format(
-                "sensors/%s/traffic_light/TL_%03d/cmd",
-                streetId, deviceId
-        );
+        String cmdTopic = MQTTBroker.getCommandTopic(streetId, deviceId);
 
         try {
-            MQTTBroker broker = new MQTTBroker();
-            String jsonCmd;
-
-            switch (action) {
-                case "buzzer": {
-                    String enabledParam = request.getParameter("enabled");
-                    boolean enabled = "true".equalsIgnoreCase(enabledParam);
-
-                    jsonCmd = "{ \"buzzer\": " + (enabled ? "true" : "false") + " }";
-                    MQTTPublisher.publish(broker, cmdTopic, jsonCmd);
-
-                    out.println("OK buzzer -> topic=" + cmdTopic);
-                    Log.log.info("[SetData] buzzer=" + enabled + " topic=" + cmdTopic + " payload=" + jsonCmd);
-                    break;
-                }
-
-                case "force":
-                default: {
-                    jsonCmd = "{ \"force\": \"ped_green\" }";
-                    MQTTPublisher.publish(broker, cmdTopic, jsonCmd);
-
-                    out.println("OK force -> topic=" + cmdTopic);
-                    Log.log.info("[SetData] force topic=" + cmdTopic + " payload=" + jsonCmd);
-                    break;
-                }
+            action = TrafficLightCommands.normalizeAction(action);
+            boolean enabled = "true".equalsIgnoreCase(request.getParameter("enabled"));
+            String cid = CommandTracker.newCorrelationId();
+            send(action, enabled, streetId, deviceId, cid);
+
+            if (TrafficLightCommands.BUZZER.equals(action)) {
+                out.println("OK buzzer -> topic=" + cmdTopic + " cid=" + cid);
+                Log.log.info("[SetData] buzzer=" + enabled + " topic=" + cmdTopic + " cid=" + cid);
+            } else {
+                out.println("OK force -> topic=" + cmdTopic + " cid=" + cid);
+                Log.log.info("[SetData] force topic=" + cmdTopic + " cid=" + cid);
             }
 
+        } catch (CancellationException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            out.println("ERROR: peticion cancelada (" + e.getMessage() + ")");
+            Log.log.warn("[SetData] Cancelada: " + e.getMessage());
         } catch (Exception e) {
             response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
             out.println("ERROR: exception enviando MQTT");
@@ -108,4 +98,18 @@ public class SetData extends HttpServlet {
             out.close();
         }
     }
+
+    /**
+     * Publica el comando y espera el ACK del broker (QoS del tipo de comando).
+     */
+    private static void send(String action, boolean enabled, String streetId, int deviceId, String cid)
+            throws Exception {
+        try {
+            // Sin pasar del plazo de la petición; se deja de esperar si el cliente se va
+            RequestDeadline.await(TrafficLightCommands.send(action, enabled, streetId, deviceId, cid),
+                    TrafficLightCommands.PUBLISH_TIMEOUT_MS);
+        } catch (ExecutionException e) {
+            throw new Exception("MQTT publish failed: " + e.getCause(), e.getCause());
+        }
+    }
 }
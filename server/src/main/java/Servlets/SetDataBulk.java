@@ -0,0 +1,194 @@
+package servlets;
+
+import com.google.gson.Gson;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import logic.CommandTracker;
+import logic.Log;
+import logic.RequestDeadline;
+import logic.StreetCatalog;
+import mqtt.MQTTBroker;
+import mqtt.TrafficLightCommands;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Envía el mismo comando a varios semáforos en una sola petición.
+ *
+ * Destino (uno de los tres):
+ *  - deviceIds=1,2,3  (con streetId opcional; si no, la calle de cada dispositivo)
+ *  - streetId=ST_2245 todos los dispositivos de la calle
+ *  - district=...     todos los dispositivos de las calles del distrito (calle.district)
+ *
+ * action/enabled igual que SetData. Todos los comandos se publican a la vez
+ * (lo que no cabe en vuelo en MQTTPublisherPool sale según llegan los ACK) y
+ * la respuesta es un JSON con el resultado de cada dispositivo.
+ */
+@WebServlet(value = "/SetDataBulk", asyncSupported = true)
+public class SetDataBulk extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    // Tope de seguridad por petición; no depende de lo que cabe en vuelo en
+    // MQTTPublisherPool, que encola el resto hasta que llegan los ACK
+    private static final int MAX_DEVICES = Integer.getInteger("ubicomp.bulk.maxDevices", 10000);
+
+    private static final Gson GSON = new Gson();
+
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::processRequest);
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AsyncRequests.run(request, response, this::processRequest);
+    }
+
+    private void processRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType("application/json;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        Log.log.info("[SetDataBulk] query=" + request.getQueryString());
+
+        try {
+            String action = TrafficLightCommands.normalizeAction(request.getParameter("action"));
+            boolean enabled = "true".equalsIgnoreCase(request.getParameter("enabled"));
+
+            Map<Integer, String> targets = resolveTargets(request);
+            if (targets.isEmpty()) {
+                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                out.println(GSON.toJson(error("No hay dispositivos para el destino indicado")));
+                return;
+            }
+            if (targets.size() > MAX_DEVICES) {
+                response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                out.println(GSON.toJson(error("Demasiados dispositivos (" + targets.size() + " > " + MAX_DEVICES + ")")));
+                return;
+            }
+
+            // Reparto: todas las publicaciones salen sin esperar a las anteriores
+            List<Map<String, Object>> results = new ArrayList<>();
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (Map.Entry<Integer, String> t : targets.entrySet()) {
+                String topic = MQTTBroker.getCommandTopic(t.getValue(), t.getKey());
+                Map<String, Object> r = new LinkedHashMap<>();
+                r.put("deviceId", t.getKey());
+                r.put("streetId", t.getValue());
+                r.put("topic", topic);
+                String cid = CommandTracker.newCorrelationId();
+                r.put("cid", cid);
+                results.add(r);
+                futures.add(TrafficLightCommands.send(action, enabled, t.getValue(), t.getKey(), cid));
+            }
+
+            // Un único plazo para todo el lote, sin pasar del de la petición
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TrafficLightCommands.PUBLISH_TIMEOUT_MS);
+            int ok = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                Map<String, Object> r = results.get(i);
+                try {
+                    RequestDeadline.await(futures.get(i),
+                            Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+                    r.put("ok", true);
+                    ok++;
+                } catch (ExecutionException e) {
+                    r.put("ok", false);
+                    r.put("error", String.valueOf(e.getCause()));
+                } catch (TimeoutException e) {
+                    r.put("ok", false);
+                    r.put("error", "timeout");
+                }
+            }
+
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("action", action);
+            if (TrafficLightCommands.BUZZER.equals(action)) body.put("enabled", enabled);
+            body.put("requested", targets.size());
+            body.put("ok", ok);
+            body.put("failed", targets.size() - ok);
+            body.put("results", results);
+            // Fallos parciales van en results; solo se marca error si no ha salido ninguno
+            if (ok == 0) response.setStatus(HttpServletResponse.SC_BAD_GATEWAY);
+            out.println(GSON.toJson(body));
+            Log.log.info("[SetDataBulk] " + action + " -> " + ok + "/" + targets.size() + " devices");
+
+        } catch (IllegalArgumentException e) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            out.println(GSON.toJson(error(e.getMessage())));
+            Log.log.warn("[SetDataBulk] " + e.getMessage());
+        } catch (CancellationException e) {
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            out.println(GSON.toJson(error("peticion cancelada (" + e.getMessage() + ")")));
+            Log.log.warn("[SetDataBulk] Cancelada: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            out.println(GSON.toJson(error("interrupted")));
+        } catch (Exception e) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            out.println(GSON.toJson(error("exception enviando MQTT")));
+            Log.log.error("[SetDataBulk] Exception:", e);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return dispositivo → calle de cada destino, en orden
+     * @throws IllegalArgumentException si no se indica destino o deviceIds no es válido
+     */
+    private static Map<Integer, String> resolveTargets(HttpServletRequest request) {
+        StreetCatalog catalog = StreetCatalog.getInstance();
+        String deviceIds = request.getParameter("deviceIds");
+        String streetId = request.getParameter("streetId");
+        String district = request.getParameter("district");
+        Map<Integer, String> targets = new LinkedHashMap<>();
+
+        if (deviceIds != null && !deviceIds.isBlank()) {
+            Set<Integer> ids = new LinkedHashSet<>();
+            for (String part : deviceIds.split(",")) {
+                if (part.isBlank()) continue;
+                try {
+                    ids.add(Integer.parseInt(part.trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("deviceId invalido (" + part.trim() + ")");
+                }
+            }
+            boolean fixedStreet = streetId != null && !streetId.isBlank();
+            for (int id : ids) {
+                String street = fixedStreet ? streetId.trim() : catalog.streetOf(id);
+                if (street == null) {
+                    throw new IllegalArgumentException("Dispositivo " + id + " sin calle conocida; indique streetId");
+                }
+                targets.put(id, street);
+            }
+        } else if (streetId != null && !streetId.isBlank()) {
+            for (int id : catalog.deviceIds(streetId.trim())) targets.put(id, streetId.trim());
+        } else if (district != null && !district.isBlank()) {
+            for (int id : catalog.deviceIdsByDistrict(district.trim())) targets.put(id, catalog.streetOf(id));
+        } else {
+            throw new IllegalArgumentException("Indique deviceIds, streetId o district");
+        }
+        return targets;
+    }
+
+    private static Map<String, Object> error(String message) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("error", message);
+        return m;
+    }
+}